@@ -6,5 +6,5 @@ cd "$(dirname "$0")"
 
 # O teu comando de execução
 java --module-path resources/javafx-sdk-25/lib \
-     --add-modules javafx.controls,javafx.fxml,javafx.swing \
+     --add-modules javafx.controls,javafx.fxml,javafx.swing,jdk.incubator.vector \
      -cp out Main
\ No newline at end of file
@@ -0,0 +1,63 @@
+import model.MoneyCount;
+import utils.ExportadorRegistos;
+import utils.Journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Exporta os dados sem abrir a janela (ex: uma exportação noturna):
+ *
+ * <pre>java Exportar destino.csv [--formato csv|jsonl] [--de 2020-01] [--ate 2024-12] [--gzip]</pre>
+ *
+ * O formato e a compressão também se deduzem da extensão (.jsonl, .gz). O ficheiro de dados e o
+ * journal são só lidos (nunca convertidos), por isso pode correr com o programa aberto.
+ */
+public class Exportar {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Uso: java Exportar destino.csv [--formato csv|jsonl] [--de AAAA-MM] [--ate AAAA-MM] [--gzip]");
+            System.exit(2);
+        }
+
+        Path destino = Path.of(args[0]);
+        String nome = destino.getFileName().toString().toLowerCase();
+        boolean gzip = nome.endsWith(".gz");
+        ExportadorRegistos.Formato formato = nome.contains(".json") ? ExportadorRegistos.Formato.JSONL : ExportadorRegistos.Formato.CSV;
+        YearMonth de = null, ate = null;
+
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--formato" -> formato = ExportadorRegistos.Formato.valueOf(args[++i].toUpperCase());
+                    case "--de" -> de = YearMonth.parse(args[++i]);
+                    case "--ate" -> ate = YearMonth.parse(args[++i]);
+                    case "--gzip" -> gzip = true;
+                    default -> throw new IllegalArgumentException("opção desconhecida " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("⚠️ Argumentos inválidos: " + e.getMessage());
+            System.exit(2);
+        }
+
+        // O programa pode estar aberto e compactar o journal a meio: a leitura repete-se se isso acontecer
+        MoneyCount modelo = Journal.lerSoLeitura(Main.FICHEIRO_MODELO, Main.FICHEIRO_JOURNAL);
+        if (modelo == null) {
+            System.exit(1);
+        }
+
+        try {
+            long inicio = System.nanoTime();
+            long linhas = ExportadorRegistos.exportar(modelo, destino, formato, de, ate, gzip);
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            System.out.printf("✅ %d linhas exportadas para %s (%.1f s)%n", linhas, destino.toAbsolutePath(), segundos);
+        } catch (IOException e) {
+            System.err.println("⚠️ Erro ao exportar para " + destino + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -1,46 +1,81 @@
 import controller.*;
 import model.*;
 import view.Janela;
+import utils.AutoGuardar;
+import utils.Journal;
 import utils.Serializer;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.YearMonth;
 
 import javax.swing.*;
 
 public class Main {
-    private static final String FICHEIRO_MODELO = "moneycount.dat";
+    static final String FICHEIRO_MODELO = "moneycount.dat";
+    static final String FICHEIRO_JOURNAL = "moneycount.journal";
+    private static final Duration AUTOSAVE_ESPERA = Duration.ofSeconds(2);
+    private static final Duration AUTOSAVE_LATENCIA_MAXIMA = Duration.ofSeconds(30);
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             // Tentar carregar modelo
             MoneyCount modelo = Serializer.ler(FICHEIRO_MODELO);
+            if (modelo == null && Serializer.existe(FICHEIRO_MODELO)) {
+                // Começar vazio faria o autosave substituir o ficheiro, que ainda pode ser recuperado
+                Path copia = Serializer.copiarIlegivel(FICHEIRO_MODELO);
+                JOptionPane.showMessageDialog(null,
+                        "Não foi possível ler os dados (" + FICHEIRO_MODELO + ").\n"
+                                + (copia != null ? "Foi guardada uma cópia em " + copia.toAbsolutePath() + ".\n" : "")
+                                + "O programa vai fechar para não os substituir.",
+                        "Erro", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+            }
             if (modelo == null) {
                 modelo = new MoneyCount();
             }
 
-            // Exemplo: adicionar dados se modelo estiver vazio
-            if (modelo.getRegistos().isEmpty()) {
-                YearMonth mes = YearMonth.now();
-                Registo registo = new Registo(mes, 0);
-
-                modelo.adicionarRegisto(registo);
+            // Reproduzir as alterações feitas depois do último snapshot
+            Journal journal = null;
+            try {
+                journal = new Journal(FICHEIRO_JOURNAL, FICHEIRO_MODELO);
+                journal.reproduzir(modelo);
+            } catch (IOException e) {
+                System.err.println("⚠️ Erro ao abrir journal: " + e.getMessage());
             }
 
-            // Criar controlador e view
-            MoneyCountController controller = new MoneyCountController(modelo);
+            // Criar controlador e view (o controlador cria o mês atual se ainda não existir)
+            MoneyCountController controller = new MoneyCountController(modelo, journal, null);
             controller.setDataModelo(YearMonth.now());
 
+            // O autosave tira os instantâneos através do controlador, sob o mesmo lock das alterações
+            AutoGuardar autoGuardar = null;
+            if (journal != null) {
+                autoGuardar = new AutoGuardar(journal, controller::iniciarCompactacao, AUTOSAVE_ESPERA, AUTOSAVE_LATENCIA_MAXIMA);
+                controller.setAutoGuardar(autoGuardar);
+            }
+
             Janela janela = new Janela(controller);
             SwingUtilities.invokeLater(() -> {
                 janela.atualizarVista();
             });
             janela.setVisible(true);
 
-            final MoneyCount modeloFinal = modelo;
+            final Journal journalFinal = journal;
+            final AutoGuardar autoGuardarFinal = autoGuardar;
 
-            // Guardar ao sair
+            // Guardar ao sair: compacta o journal no snapshot. O EDT ainda pode estar a alterar
+            // o modelo, por isso grava-se um instantâneo tirado sob o lock do controlador
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                Serializer.guardar(FICHEIRO_MODELO, modeloFinal);
+                if (journalFinal != null) {
+                    autoGuardarFinal.parar();
+                    MoneyCount instantaneo = controller.iniciarCompactacao();
+                    if (instantaneo != null) journalFinal.concluirCompactacao(instantaneo);
+                    journalFinal.fechar();
+                } else {
+                    Serializer.guardar(FICHEIRO_MODELO, controller.instantaneo());
+                }
             }));
         });
     }
@@ -0,0 +1,86 @@
+package controller;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import model.Despesa;
+import model.DespesaRecorrente;
+import model.Entrada;
+
+/**
+ * Alteração feita pelo controlador, guardada para a poder desfazer e refazer.
+ * Cada comando só guarda o que muda (o item, ou o montante de antes e de depois), nunca uma cópia do modelo;
+ * só as alterações a uma série guardam a série, que é pequena (escalões, ajustes e meses pagos).
+ */
+sealed interface Comando {
+
+    /**
+     * Meses que o comando altera (ao ser feito ou desfeito), para a vista saber o que tem de reler.
+     */
+    default Evento.MesesAlterados meses() {
+        return switch (this) {
+            case DespesaAdicionada c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case DespesaRemovida c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case DespesaEditada c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case PagaMarcada c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case EntradaAdicionada c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case EntradaRemovida c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case EntradaEditada c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case RendimentoAtualizado c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case ItensAdicionados c -> new Evento.MesesAlterados(c.mes(), c.mes());
+            case SerieAlterada c -> {
+                // A série aparece desde o início até ao fim (ou para sempre)
+                YearMonth de = c.antes() != null ? c.antes().getInicio() : c.depois().getInicio();
+                if (c.antes() != null && c.depois() != null && c.depois().getInicio().isBefore(de)) de = c.depois().getInicio();
+                yield new Evento.MesesAlterados(de, null);
+            }
+            case Varios c -> {
+                if (c.comandos().isEmpty()) yield new Evento.MesesAlterados(null, null);
+                Evento.MesesAlterados total = c.comandos().get(0).meses();
+                YearMonth de = total.de(), ate = total.ate();
+                for (int i = 1; i < c.comandos().size(); i++) {
+                    Evento.MesesAlterados m = c.comandos().get(i).meses();
+                    de = de == null || m.de() == null ? null : (m.de().isBefore(de) ? m.de() : de);
+                    ate = ate == null || m.ate() == null ? null : (m.ate().isAfter(ate) ? m.ate() : ate);
+                }
+                yield new Evento.MesesAlterados(de, ate);
+            }
+        };
+    }
+
+    record DespesaAdicionada(YearMonth mes, Despesa despesa) implements Comando { }
+
+    record DespesaRemovida(YearMonth mes, Despesa despesa) implements Comando { }
+
+    record DespesaEditada(YearMonth mes, int id, long antes, long depois) implements Comando { }
+
+    record PagaMarcada(YearMonth mes, int id, boolean paga) implements Comando { }
+
+    record EntradaAdicionada(YearMonth mes, Entrada entrada) implements Comando { }
+
+    record EntradaRemovida(YearMonth mes, Entrada entrada) implements Comando { }
+
+    record EntradaEditada(YearMonth mes, int id, long antes, long depois) implements Comando { }
+
+    record RendimentoAtualizado(YearMonth mes, long antes, long depois) implements Comando { }
+
+    /**
+     * @param antes A série antes da alteração (null se foi criada).
+     * @param depois A série depois da alteração (null se deixou de existir).
+     */
+    record SerieAlterada(int id, DespesaRecorrente antes, DespesaRecorrente depois) implements Comando { }
+
+    /**
+     * Itens adicionados a um mês de uma só vez (ex: uma importação).
+     */
+    record ItensAdicionados(YearMonth mes, List<Despesa> despesas, List<Entrada> entradas) implements Comando { }
+
+    /**
+     * Vários comandos que se desfazem juntos (ex: um lote), por ordem inversa. A lista é uma cópia imutável.
+     */
+    record Varios(List<Comando> comandos) implements Comando {
+        public Varios {
+            comandos = List.copyOf(comandos);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package controller;
+
+import java.time.YearMonth;
+
+import model.Despesa;
+import model.DespesaFixa;
+import model.Entrada;
+
+/**
+ * Alteração publicada pelo controlador depois de aplicada (ver {@link MoneyCountController#subscrever}).
+ * Diz à vista o que mudou, para ela só atualizar a linha, a caixa ou a fatia afetadas.
+ * Os montantes estão em cêntimos, como no modelo.
+ */
+public sealed interface Evento {
+
+    /**
+     * Cópia de uma despesa ou entrada, tal como aparece no mês.
+     *
+     * @param fixa true para uma despesa fixa (as de uma série também aparecem nos meses seguintes)
+     * @param paga Só conta nas despesas fixas
+     */
+    record Item(int id, String nome, long montante, boolean entrada, boolean fixa, boolean paga) {
+
+        static Item de(Despesa d) {
+            boolean fixa = d instanceof DespesaFixa;
+            return new Item(d.getIdDespesa(), d.getNome(), d.getMontante(), false, fixa, fixa && ((DespesaFixa) d).isPago());
+        }
+
+        static Item de(Entrada en) {
+            return new Item(en.getIdEntrada(), en.getNome(), en.getMontante(), true, false, false);
+        }
+    }
+
+    record ItemAdicionado(YearMonth mes, Item item) implements Evento { }
+
+    record ItemRemovido(YearMonth mes, Item item) implements Evento { }
+
+    record ItemEditado(YearMonth mes, Item antes, Item depois) implements Evento { }
+
+    record PagaAlterada(YearMonth mes, Item item) implements Evento { }
+
+    record RendimentoAlterado(YearMonth mes, long antes, long depois) implements Evento { }
+
+    record MesMudado(YearMonth antes, YearMonth depois) implements Evento { }
+
+    /**
+     * Muitas alterações de uma vez (lotes, importações, desfazer): a vista deve reler os meses afetados.
+     *
+     * @param de Primeiro mês afetado (null = sem limite)
+     * @param ate Último mês afetado (null = sem limite)
+     */
+    record MesesAlterados(YearMonth de, YearMonth ate) implements Evento {
+
+        public boolean inclui(YearMonth mes) {
+            return (de == null || !mes.isBefore(de)) && (ate == null || !mes.isAfter(ate));
+        }
+    }
+}
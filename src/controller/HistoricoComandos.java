@@ -0,0 +1,65 @@
+package controller;
+
+/**
+ * Histórico para desfazer/refazer, num anel de tamanho fixo: quando enche, o comando mais antigo
+ * é esquecido. Desfazer e refazer são O(1), e registar também (amortizado).
+ */
+class HistoricoComandos {
+
+    private final Comando[] anel;
+    private int inicio; // Posição do comando mais antigo
+    private int feitos; // Comandos que se podem desfazer
+    private int total; // Comandos guardados (os que estão a seguir aos feitos podem ser refeitos)
+
+    HistoricoComandos(int capacidade) {
+        this.anel = new Comando[capacidade];
+    }
+
+    /**
+     * Guarda um comando acabado de fazer. Os que estavam por refazer deixam de poder ser refeitos.
+     */
+    void registar(Comando c) {
+        if (feitos == anel.length) {
+            anel[inicio] = null;
+            inicio = (inicio + 1) % anel.length;
+            feitos--;
+        }
+        anel[posicao(feitos)] = c;
+        feitos++;
+        for (int i = feitos; i < total; i++) anel[posicao(i)] = null;
+        total = feitos;
+    }
+
+    /**
+     * @return O comando a desfazer, ou null se não houver.
+     */
+    Comando desfazer() {
+        if (feitos == 0) return null;
+        return anel[posicao(--feitos)];
+    }
+
+    /**
+     * @return O comando a refazer, ou null se não houver.
+     */
+    Comando refazer() {
+        if (feitos == total) return null;
+        return anel[posicao(feitos++)];
+    }
+
+    /**
+     * Troca um comando guardado (feito ou por refazer) por outro, no mesmo lugar.
+     * Não faz nada se o comando já foi esquecido.
+     */
+    void substituir(Comando antigo, Comando novo) {
+        for (int i = 0; i < total; i++) {
+            if (anel[posicao(i)] == antigo) {
+                anel[posicao(i)] = novo;
+                return;
+            }
+        }
+    }
+
+    private int posicao(int i) {
+        return (inicio + i) % anel.length;
+    }
+}
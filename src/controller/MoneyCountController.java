@@ -1,29 +1,229 @@
 package controller;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
+import model.Alteracao;
 import model.Despesa;
 import model.DespesaFixa;
+import model.DespesaRecorrente;
+import model.Dinheiro;
 import model.Entrada;
 import model.MoneyCount;
 import model.Registo;
+import model.ResumoMes;
+import utils.AutoGuardar;
+import utils.ImportadorExtratos;
+import utils.Journal;
 
+/**
+ * Controlador do modelo, seguro para usar de várias threads (EDT, importações, autosave).
+ *
+ * Todas as alterações passam por um {@link StampedLock} em modo exclusivo. Cada uma só mexe num mês
+ * (ou numa série), por isso ninguém espera muito por ela. Ler um mês usa o lock de leitura, partilhado
+ * com os outros leitores; só é exclusivo se o mês ainda tiver de ser carregado da fonte ou de refazer
+ * as vistas das séries. Os agregados (poupança acumulada) são lidos com uma leitura otimista, que não
+ * bloqueia e só repete com o lock se um escritor se meteu pelo meio.
+ * Quem precisa de ler muito (gravar, relatórios) usa {@link #instantaneo()}, que é O(1) e depois já não
+ * precisa de lock nenhum.
+ *
+ * Cada alteração publica um {@link Evento} aos ouvintes ({@link #subscrever}), já fora do lock e pela
+ * ordem em que foram feitas, na thread que fez a alteração.
+ */
 public class MoneyCountController {
+
+    private static final int CAPACIDADE_HISTORICO = 200; // Alterações que se podem desfazer
     
-    private YearMonth dataModelo;
+    private volatile YearMonth dataModelo;
     private MoneyCount modelo;
+    private Journal journal;
+    private volatile AutoGuardar autoGuardar;
+    private final StampedLock lock = new StampedLock();
+    private final HistoricoComandos historico = new HistoricoComandos(CAPACIDADE_HISTORICO);
+    private final List<ImportacaoEmCurso> importacoes = new ArrayList<>(); // Só com o lock
+    private final List<Consumer<Evento>> ouvintes = new CopyOnWriteArrayList<>();
+    private final Queue<Evento> eventosPendentes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean aPublicar = new AtomicBoolean();
 
     public MoneyCountController(MoneyCount modelo) {
+        this(modelo, null, null);
+    }
+
+    /**
+     * @param modelo Modelo a controlar.
+     * @param journal Journal onde cada alteração é gravada (pode ser null).
+     * @param autoGuardar Serviço avisado de cada alteração para gravar o modelo (pode ser null).
+     */
+    public MoneyCountController(MoneyCount modelo, Journal journal, AutoGuardar autoGuardar) {
         this.dataModelo = YearMonth.now();
         this.modelo = modelo;
+        this.journal = journal;
+        this.autoGuardar = autoGuardar;
         verificarOuCriarRegisto(); // Garante que o mês atual existe logo ao arrancar
     }
 
+    /**
+     * Liga o serviço de autosave depois de criado o controlador (o autosave tira os instantâneos através dele).
+     */
+    public void setAutoGuardar(AutoGuardar autoGuardar) {
+        this.autoGuardar = autoGuardar;
+    }
+
+    // ==========================================
+    // SINCRONIZAÇÃO
+    // ==========================================
+
+    /**
+     * Instantâneo consistente do modelo, para ler ou gravar noutra thread sem lock.
+     */
+    public MoneyCount instantaneo() {
+        return exclusivo(modelo::instantaneo);
+    }
+
+    /**
+     * Corta o journal e tira o instantâneo no mesmo ponto, sem nenhuma alteração pelo meio.
+     * Sob o lock só se troca de canal; o fsync e a passagem para .old são feitos depois de o largar.
+     *
+     * @return O instantâneo a gravar com {@link Journal#concluirCompactacao}, ou null se não há journal
+     *         ou não foi possível cortá-lo.
+     */
+    public MoneyCount iniciarCompactacao() {
+        if (journal == null || !journal.concluirCorte()) return null;
+        MoneyCount instantaneo = exclusivo(() -> journal.cortar() ? modelo.instantaneo() : null);
+        return instantaneo != null && journal.concluirCorte() ? instantaneo : null;
+    }
+
+    /**
+     * Corre uma leitura ou alteração com o lock exclusivo.
+     */
+    private <T> T exclusivo(Supplier<T> operacao) {
+        long stamp = lock.writeLock();
+        T resultado;
+        try {
+            resultado = operacao.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        publicarPendentes();
+        return resultado;
+    }
+
+    private void exclusivo(Runnable operacao) {
+        long stamp = lock.writeLock();
+        try {
+            operacao.run();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        publicarPendentes();
+    }
+
+    // ==========================================
+    // EVENTOS
+    // ==========================================
+
+    /**
+     * Regista um ouvinte para as alterações. É chamado na thread que fez a alteração e sem o lock,
+     * por isso pode ler o controlador (a vista deve passar para o EDT se não estiver nele).
+     */
+    public void subscrever(Consumer<Evento> ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    public void cancelarSubscricao(Consumer<Evento> ouvinte) {
+        ouvintes.remove(ouvinte);
+    }
+
+    /**
+     * Guarda um evento para publicar quando o lock for largado (chamado com o lock tomado,
+     * por isso a fila fica pela ordem das alterações).
+     */
+    private void publicar(Evento evento) {
+        if (!ouvintes.isEmpty()) eventosPendentes.add(evento);
+    }
+
+    /**
+     * Entrega os eventos pendentes. Só uma thread entrega de cada vez, para não trocar a ordem;
+     * os eventos que aparecem entretanto (mesmo de um ouvinte que altere o modelo) são entregues a seguir.
+     */
+    private void publicarPendentes() {
+        while (!eventosPendentes.isEmpty() && aPublicar.compareAndSet(false, true)) {
+            try {
+                Evento e;
+                while ((e = eventosPendentes.poll()) != null) {
+                    for (Consumer<Evento> ouvinte : ouvintes) {
+                        try {
+                            ouvinte.accept(e);
+                        } catch (RuntimeException ex) {
+                            System.err.println("⚠️ Erro num ouvinte de alterações: " + ex.getMessage());
+                        }
+                    }
+                }
+            } finally {
+                aPublicar.set(false);
+            }
+        }
+    }
+
+    /**
+     * Lê um agregado das somas acumuladas sem bloquear. Se um escritor alterou o modelo
+     * durante a leitura (o valor pode vir incoerente, ou a leitura falhar), repete com o lock de leitura.
+     */
+    private long lerAgregado(LongSupplier leitura) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                long valor = leitura.getAsLong();
+                if (lock.validate(stamp)) return valor;
+            } catch (RuntimeException e) {
+                // Apanhou as somas a meio de uma escrita: repete com o lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return leitura.getAsLong();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Lê um mês com o lock de leitura, ao mesmo tempo que outros leitores. Se ler o mês o alterar
+     * (carregá-lo, ou refazer as vistas das séries), a leitura é feita com o lock exclusivo.
+     * Não há leitura otimista: um leitor a refazer as vistas ao mesmo tempo que um escritor estragava-as.
+     */
+    private <T> T lerNoMes(YearMonth mes, Supplier<T> leitura) {
+        long stamp = lock.readLock();
+        try {
+            if (modelo.lidoSemAlterar(mes)) return leitura.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return exclusivo(leitura);
+    }
+
     public YearMonth getDataModelo() {
         return dataModelo;
     }
@@ -34,242 +234,307 @@ public class MoneyCountController {
     }
 
     public void setDataModelo(YearMonth novaData) {
-        this.dataModelo = novaData;
+        exclusivo(() -> {
+            YearMonth antes = dataModelo;
+            this.dataModelo = novaData;
+            if (!novaData.equals(antes)) publicar(new Evento.MesMudado(antes, novaData));
+        });
     }
 
-    public Registo getRegistoAtual() {
-        return modelo.getRegistos().get(dataModelo);
+    /**
+     * Lê um mês qualquer com o lock tomado, sem o criar nem mudar o mês visto
+     * (a vista usa-o para preparar os meses numa thread de fundo).
+     *
+     * @param leitura Recebe o registo vivo: deve só copiar o que precisa, e depressa
+     * @return O resultado da leitura, ou null se o mês não existe
+     */
+    public <T> T lerMes(YearMonth mes, Function<Registo, T> leitura) {
+        return lerNoMes(mes, () -> {
+            Registo r = modelo.getRegistos().get(mes);
+            return r != null ? leitura.apply(r) : null;
+        });
     }
 
     // Devolve APENAS o rendimento base (ex: Salário)
     public Double getRendimentoAtual() {
-        Registo r = getRegistoAtual();
-        return r != null ? r.getRendimento() : 0.0;
+        YearMonth mes = dataModelo;
+        return lerNoMes(mes, () -> {
+            Registo r = modelo.getRegistos().get(mes);
+            return r != null ? Dinheiro.euros(r.getRendimento()) : 0.0;
+        });
     }
 
     // NOVO: O Saldo conta com a base + as entradas extra - as despesas
     public Double getSaldoAtual() {
-        Registo r = getRegistoAtual();
-        return r != null ? r.getRendimento() + r.getTotalEntradas() - r.getTotalDespesas() : 0.0;
+        YearMonth mes = dataModelo;
+        return lerNoMes(mes, () -> {
+            Registo r = modelo.getRegistos().get(mes);
+            return r != null ? Dinheiro.euros(r.getSaldo()) : 0.0;
+        });
     }
 
     public double getTotalDespesas() {
-        Registo r = getRegistoAtual();
-        if (r == null) return 0.0;
-
-        double total = 0;
-        for (Despesa d : r.getDespesas().values()) {
-            if (d instanceof DespesaFixa df) {
-                if (df.isPago()) {
-                    total += df.getMontante(); // só soma se estiver paga
-                }
-            } else {
-                total += d.getMontante(); // despesa normal conta sempre
-            }
-        }
-        return total;
+        YearMonth mes = dataModelo;
+        return lerNoMes(mes, () -> {
+            Registo r = modelo.getRegistos().get(mes);
+            // As fixas só contam se estiverem pagas; as normais contam sempre
+            return r != null ? Dinheiro.euros(r.getTotalDespesas()) : 0.0;
+        });
     }
 
     public List<Despesa> getDespesasMesAtual() {
-        Registo r = getRegistoAtual();
-        return r != null ? new ArrayList<>(r.getDespesas().values()) : new ArrayList<>();
+        YearMonth mes = dataModelo;
+        // A lista é nova e os itens não mudam depois de criados, por isso pode ser lida fora do lock
+        return lerNoMes(mes, () -> {
+            Registo r = modelo.getRegistos().get(mes);
+            return r != null ? r.listarDespesas() : new ArrayList<>();
+        });
     }
 
     public String[] getDadosGraficoMesAtual() {
-        double rendimento = 0, despesas = 0, saldo = 0, poupancaTotal = 0;
-
-        for (Map.Entry<YearMonth, Registo> entry : modelo.getRegistos().entrySet()) {
-            Registo r = entry.getValue();
-            
-            // Saldo real do mês: Rendimento Base + Entradas - Despesas
-            double saldoMes = r.getRendimento() + r.getTotalEntradas() - r.getTotalDespesas();
-
-            if (entry.getKey().equals(dataModelo)) {
-                rendimento = r.getRendimento(); // Para o gráfico/resumo, a base mantém-se separada
-                despesas = r.getTotalDespesas();
-                saldo = saldoMes;
+        YearMonth mes = dataModelo;
+        long[] valores = lerNoMes(mes, () -> {
+            long rendimento = 0, despesas = 0, saldo = 0;
+
+            // Usa o resumo do mês para não o carregar se ainda não estiver a ser visto
+            ResumoMes r = modelo.getResumo(mes);
+            if (r != null) {
+                rendimento = r.rendimento(); // Para o gráfico/resumo, a base mantém-se separada
+                despesas = r.totalDespesas();
+                saldo = r.saldo(); // Saldo real do mês: Rendimento Base + Entradas - Despesas
             }
-            poupancaTotal += saldoMes;
-        }
+            return new long[] { despesas, rendimento, saldo, modelo.getPoupancaTotal() };
+        });
 
         return new String[] {
-            String.valueOf(despesas),
-            String.valueOf(rendimento),
-            String.valueOf(saldo),
-            String.valueOf(poupancaTotal)
+            String.valueOf(Dinheiro.euros(valores[0])),
+            String.valueOf(Dinheiro.euros(valores[1])),
+            String.valueOf(Dinheiro.euros(valores[2])),
+            String.valueOf(Dinheiro.euros(valores[3]))
         };
     }
 
     public double getPoupancaAcumulada() {
-        YearMonth hoje = YearMonth.now();
-        double total = 0.0;
-
-        for (Map.Entry<YearMonth, Registo> entry : modelo.getRegistos().entrySet()) {
-            if (entry.getKey().isBefore(hoje)) {
-                Registo r = entry.getValue();
-                // A poupança antiga também tem de contar com as entradas extra!
-                total += r.getRendimento() + r.getTotalEntradas() - r.getTotalDespesas();
-            }
-        }
-        return total;
+        // Todos os meses antes do atual (o saldo de cada mês já conta com as entradas extra)
+        YearMonth ate = YearMonth.now().minusMonths(1);
+        return Dinheiro.euros(lerAgregado(() -> modelo.getPoupancaAte(ate)));
+    }
+
+    /**
+     * Poupança desde janeiro até ao mês que está a ser visto, inclusive.
+     */
+    public double getPoupancaAnoAteData() {
+        YearMonth mes = dataModelo;
+        return Dinheiro.euros(lerAgregado(() -> modelo.getPoupancaEntre(YearMonth.of(mes.getYear(), 1), mes)));
+    }
+
+    /**
+     * Poupança dos últimos {@code meses} meses, terminando no mês que está a ser visto.
+     */
+    public double getPoupancaUltimosMeses(int meses) {
+        YearMonth mes = dataModelo;
+        return Dinheiro.euros(lerAgregado(() -> modelo.getPoupancaEntre(mes.minusMonths(meses - 1), mes)));
     }
 
     public void avancarMes() {
-        dataModelo = dataModelo.plusMonths(1);
-        verificarOuCriarRegisto();
+        exclusivo(() -> {
+            dataModelo = dataModelo.plusMonths(1);
+            verificarOuCriarRegisto();
+            publicar(new Evento.MesMudado(dataModelo.minusMonths(1), dataModelo));
+        });
     }
 
     public void retrocederMes() {
-        dataModelo = dataModelo.minusMonths(1);
-        verificarOuCriarRegisto();
+        exclusivo(() -> {
+            dataModelo = dataModelo.minusMonths(1);
+            verificarOuCriarRegisto();
+            publicar(new Evento.MesMudado(dataModelo.plusMonths(1), dataModelo));
+        });
     }
 
     // ==========================================
     // LÓGICA DE GESTÃO DE DESPESAS, ENTRADAS E IDs
+    // (os métodos privados assumem que o lock exclusivo já está tomado)
     // ==========================================
 
     /**
-     * Procura em todos os registos qual é o ID mais elevado e devolve esse ID + 1.
-     * Partilhado entre Entradas e Despesas para manter uma ordem cronológica limpa.
+     * Grava a alteração no journal e marca o modelo como alterado para o autosave.
      */
-    private int gerarProximoId() {
-        int maxId = -1;
-        for (Registo r : modelo.getRegistos().values()) {
-            for (Integer id : r.getDespesas().keySet()) {
-                if (id > maxId) maxId = id;
-            }
-            for (Integer id : r.getEntradas().keySet()) {
-                if (id > maxId) maxId = id;
-            }
-        }
-        return maxId + 1;
+    private void registar(Alteracao a) {
+        if (journal != null) journal.registar(a);
+        AutoGuardar ag = autoGuardar;
+        if (ag != null) ag.marcarSujo();
     }
 
-    public void adicionarDespesa(String nome, double valor, boolean fixa) {
-        // Formatar o nome: Primeira letra maiúscula
+    /**
+     * Grava várias alterações numa só escrita (lotes, importações, desfazer).
+     */
+    private void registarTodas(List<Alteracao> alteracoes) {
+        if (alteracoes.isEmpty()) return;
+        if (journal != null) journal.registarTodas(alteracoes);
+        AutoGuardar ag = autoGuardar;
+        if (ag != null) ag.marcarSujo();
+    }
+
+    /**
+     * Formatar o nome: Primeira letra maiúscula
+     */
+    private static String formatarNome(String nome, String semNome) {
         if (nome != null && !nome.trim().isEmpty()) {
             nome = nome.trim();
-            nome = nome.substring(0, 1).toUpperCase() + nome.substring(1);
-        } else {
-            nome = "Despesa sem nome";
+            return nome.substring(0, 1).toUpperCase() + nome.substring(1);
         }
+        return semNome;
+    }
 
-        Registo registoAtual = getRegistoAtual();
-        int novoId = gerarProximoId(); // Garante um ID único!
-
-        if (fixa) {
-            DespesaFixa nova = new DespesaFixa(novoId, nome, valor, false);
-            registoAtual.adicionarDespesa(nova);
-
-            // Propaga para meses FUTUROS que já tenham sido criados na memória
-            for (Map.Entry<YearMonth, Registo> entry : modelo.getRegistos().entrySet()) {
-                if (entry.getKey().isAfter(dataModelo)) { 
-                    int idFuturo = gerarProximoId();
-                    DespesaFixa novaFutura = new DespesaFixa(idFuturo, nome, valor, false);
-                    entry.getValue().adicionarDespesa(novaFutura);
-                }
+    public void adicionarDespesa(String nome, double valor, boolean fixa) {
+        String nomeFinal = formatarNome(nome, "Despesa sem nome");
+        exclusivo(() -> {
+            YearMonth mes = dataModelo;
+            if (fixa) {
+                // Uma só série, que aparece neste mês e em todos os seguintes (já criados ou não)
+                DespesaRecorrente nova = new DespesaRecorrente(modelo.gerarId(), nomeFinal, Dinheiro.centimos(valor), mes);
+                modelo.adicionarRecorrente(nova);
+                registar(Alteracao.criarRecorrente(nova));
+                historico.registar(new Comando.SerieAlterada(nova.getId(), null, nova));
+                publicar(new Evento.ItemAdicionado(mes, Evento.Item.de(modelo.getRegistos().get(mes).getDespesa(nova.getId()))));
+            } else {
+                Despesa nova = new Despesa(modelo.gerarId(), nomeFinal, Dinheiro.centimos(valor));
+                modelo.getRegistos().get(mes).adicionarDespesa(nova);
+                registar(Alteracao.adicionarDespesa(mes, nova));
+                historico.registar(new Comando.DespesaAdicionada(mes, nova));
+                publicar(new Evento.ItemAdicionado(mes, Evento.Item.de(nova)));
             }
-        } else {
-            Despesa nova = new Despesa(novoId, nome, valor);
-            registoAtual.adicionarDespesa(nova);
-        }
+        });
     }
 
     public void removerDespesa(int idDespesa) {
-        Registo registo = getRegistoAtual();
-        if (registo != null) {
-            registo.getDespesas().remove(idDespesa);
+        exclusivo(() -> removerDespesaNoMes(idDespesa));
+    }
+
+    private void removerDespesaNoMes(int idDespesa) {
+        Registo registo = modelo.getRegistos().get(dataModelo);
+        if (registo == null) return;
+
+        // Num membro de uma série, o que muda é a série (deixa de aparecer neste mês)
+        DespesaRecorrente serie = registo.getDespesa(idDespesa) instanceof DespesaFixa df && df.isRecorrente()
+                ? modelo.getRecorrente(df.getIdSerie()).clone() : null;
+        Despesa removida = registo.removerDespesa(idDespesa);
+        if (removida != null) {
+            registar(Alteracao.removerDespesa(dataModelo, idDespesa));
+            historico.registar(serie != null
+                    ? new Comando.SerieAlterada(serie.getId(), serie, modelo.getRecorrente(serie.getId()).clone())
+                    : new Comando.DespesaRemovida(dataModelo, removida));
+            publicar(new Evento.ItemRemovido(dataModelo, Evento.Item.de(removida)));
         }
     }
 
     public void editarDespesa(int idDespesa, double novoValor) {
-        Registo registo = getRegistoAtual();
-        if (registo != null) {
-            Despesa despesa = registo.getDespesas().get(idDespesa);
-            if (despesa != null) {
-                despesa.setMontante(novoValor);
-            }
+        exclusivo(() -> editarDespesaNoMes(idDespesa, Dinheiro.centimos(novoValor)));
+    }
+
+    private void editarDespesaNoMes(int idDespesa, long centimos) {
+        Registo registo = modelo.getRegistos().get(dataModelo);
+        Despesa antes = registo != null ? registo.getDespesa(idDespesa) : null;
+        if (antes != null && registo.editarDespesa(idDespesa, centimos)) {
+            registar(Alteracao.editarDespesa(dataModelo, idDespesa, centimos));
+            historico.registar(new Comando.DespesaEditada(dataModelo, idDespesa, antes.getMontante(), centimos));
+            publicar(new Evento.ItemEditado(dataModelo, Evento.Item.de(antes), Evento.Item.de(registo.getDespesa(idDespesa))));
         }
     }
     
     public void atualizarRendimento(double novoRendimento){
-        Registo registo = getRegistoAtual();
-        if (registo != null) registo.setRendimento(novoRendimento);
+        exclusivo(() -> {
+            Registo registo = modelo.getRegistos().get(dataModelo);
+            if (registo != null) {
+                long centimos = Dinheiro.centimos(novoRendimento);
+                long antes = registo.getRendimento();
+                registo.setRendimento(centimos);
+                registar(Alteracao.atualizarRendimento(dataModelo, centimos));
+                historico.registar(new Comando.RendimentoAtualizado(dataModelo, antes, centimos));
+                publicar(new Evento.RendimentoAlterado(dataModelo, antes, centimos));
+            }
+        });
     }
 
     private void verificarOuCriarRegisto() {
-        YearMonth mesAnterior = dataModelo.minusMonths(1);
-        Registo registoAtual = modelo.getRegistos().get(dataModelo);
-        Registo anterior = modelo.getRegistos().get(mesAnterior);
-
-        // Se o mês ainda não existe, cria-o e copia as despesas fixas do mês anterior.
-        if (registoAtual == null) {
-            double rendimento = (anterior != null) ? anterior.getRendimento() : 0.0;
-            registoAtual = new Registo(dataModelo, rendimento);
-            modelo.getRegistos().put(dataModelo, registoAtual);
-
-            // A cópia de despesas fixas SÓ acontece na criação do mês
-            if (anterior != null) {
-                for (Despesa d : anterior.getDespesas().values()) {
-                    if (d instanceof DespesaFixa df) {
-                        int novoId = gerarProximoId(); // Garante um ID único para a cópia!
-                        DespesaFixa nova = new DespesaFixa(novoId, df.getNome(), df.getMontante(), false);
-                        registoAtual.adicionarDespesa(nova);
-                    }
-                }
-            }
+        criarRegistoSeNaoExiste(dataModelo);
+    }
+
+    private Registo criarRegistoSeNaoExiste(YearMonth mes) {
+        // Se o mês ainda não existe, cria-o com o rendimento do mês anterior.
+        // As despesas fixas não são copiadas: as séries recorrentes aparecem sozinhas no mês novo.
+        Registo registo = modelo.getRegistos().get(mes);
+        if (registo == null) {
+            Registo anterior = modelo.getRegistos().get(mes.minusMonths(1));
+            long rendimento = (anterior != null) ? anterior.getRendimento() : 0;
+            registo = new Registo(mes, rendimento);
+            modelo.getRegistos().put(mes, registo);
+            registar(Alteracao.criarRegisto(mes, rendimento));
         }
+        return registo;
     }
 
     public void marcarDespesaComoPaga(int idDespesa, boolean paga) {
-        Registo registo = getRegistoAtual();
-        if (registo != null) {
-            Despesa d = registo.getDespesas().get(idDespesa);
-            if (d instanceof DespesaFixa df) {
-                df.setPago(paga);
+        exclusivo(() -> {
+            Registo registo = modelo.getRegistos().get(dataModelo);
+            boolean mudou = registo != null && registo.getDespesa(idDespesa) instanceof DespesaFixa df && df.isPago() != paga;
+            if (registo != null && registo.marcarPaga(idDespesa, paga)) {
+                if (mudou) {
+                    registar(Alteracao.marcarPaga(dataModelo, idDespesa, paga));
+                    historico.registar(new Comando.PagaMarcada(dataModelo, idDespesa, paga));
+                    publicar(new Evento.PagaAlterada(dataModelo, Evento.Item.de(registo.getDespesa(idDespesa))));
+                }
             }
-        }
+        });
     }
 
     public void editarDespesaFixaFuturas(int idDespesa, double novoValor) {
-        Registo registoAtual = getRegistoAtual();
-        if (registoAtual == null) return;
-
-        Despesa despesaAtual = registoAtual.getDespesas().get(idDespesa);
-        if (!(despesaAtual instanceof DespesaFixa)) return;
-
-        despesaAtual.setMontante(novoValor);
-        int idDespesaFixa = despesaAtual.getIdDespesa();
-        String nomeDespesa = despesaAtual.getNome();
-
-        for (Registo r : modelo.getRegistos().values()) {
-            if (!r.getData().isBefore(registoAtual.getData())) {
-                for (Despesa d : r.getDespesas().values()) {
-                    if (d instanceof DespesaFixa df) {
-                        if (df.getIdDespesa() == idDespesaFixa || df.getNome().equals(nomeDespesa)) {
-                            df.setMontante(novoValor);
-                        }
-                    }
+        exclusivo(() -> {
+            Registo registoAtual = modelo.getRegistos().get(dataModelo);
+            if (registoAtual == null) return;
+
+            if (!(registoAtual.getDespesa(idDespesa) instanceof DespesaFixa df)) return;
+
+            // Membro de uma série: basta mudar o escalão da série a partir deste mês
+            long centimos = Dinheiro.centimos(novoValor);
+            if (df.isRecorrente()) {
+                DespesaRecorrente antes = modelo.getRecorrente(df.getIdSerie()).clone();
+                if (modelo.alterarRecorrenteDesde(df.getIdSerie(), dataModelo, centimos)) {
+                    registar(Alteracao.alterarRecorrente(dataModelo, df.getIdSerie(), centimos));
+                    historico.registar(new Comando.SerieAlterada(antes.getId(), antes, modelo.getRecorrente(antes.getId()).clone()));
+                    publicar(new Evento.ItemEditado(dataModelo, Evento.Item.de(df), Evento.Item.de(registoAtual.getDespesa(idDespesa))));
+                    return;
                 }
             }
-        }
+
+            // Despesa fixa sem série: só existe neste mês
+            editarDespesaNoMes(idDespesa, centimos);
+        });
     }
 
     public void removerDespesaFixaFuturas(int idDespesa) {
-        Registo registo = getRegistoAtual();
-        if (registo == null) return;
+        exclusivo(() -> {
+            Registo registo = modelo.getRegistos().get(dataModelo);
+            if (registo == null) return;
 
-        Despesa despesaAtual = registo.getDespesas().get(idDespesa);
-        if (despesaAtual == null) return;
-        
-        String nomeDespesa = despesaAtual.getNome();
-        for (Registo r : modelo.getRegistos().values()) {
-            if (!r.getData().isBefore(registo.getData())) {
-                r.getDespesas().values().removeIf(d -> 
-                    d instanceof DespesaFixa df && df.getNome().equals(nomeDespesa)
-                );
+            if (!(registo.getDespesa(idDespesa) instanceof DespesaFixa df)) return;
+
+            // Membro de uma série: a série termina no mês anterior a este
+            if (df.isRecorrente()) {
+                DespesaRecorrente antes = modelo.getRecorrente(df.getIdSerie()).clone();
+                if (modelo.terminarRecorrente(df.getIdSerie(), dataModelo)) {
+                    registar(Alteracao.terminarRecorrente(dataModelo, df.getIdSerie()));
+                    DespesaRecorrente depois = modelo.getRecorrente(antes.getId());
+                    historico.registar(new Comando.SerieAlterada(antes.getId(), antes, depois != null ? depois.clone() : null));
+                    publicar(new Evento.ItemRemovido(dataModelo, Evento.Item.de(df)));
+                    return;
+                }
             }
-        }
+
+            // Despesa fixa sem série: só existe neste mês
+            removerDespesaNoMes(idDespesa);
+        });
     }
 
     // ==========================================
@@ -277,40 +542,483 @@ public class MoneyCountController {
     // ==========================================
 
     public List<Entrada> getEntradasMesAtual() {
-        Registo r = getRegistoAtual();
-        return r != null ? new ArrayList<>(r.getEntradas().values()) : new ArrayList<>();
+        YearMonth mes = dataModelo;
+        return lerNoMes(mes, () -> {
+            Registo r = modelo.getRegistos().get(mes);
+            return r != null ? new ArrayList<>(r.getEntradas().values()) : new ArrayList<>();
+        });
     }
 
     public void adicionarEntrada(String nome, double valor) {
-        // Formatar o nome: Primeira letra maiúscula
-        if (nome != null && !nome.trim().isEmpty()) {
-            nome = nome.trim();
-            nome = nome.substring(0, 1).toUpperCase() + nome.substring(1);
-        } else {
-            nome = "Entrada sem nome"; 
+        String nomeFinal = formatarNome(nome, "Entrada sem nome");
+        exclusivo(() -> {
+            YearMonth mes = dataModelo;
+            Entrada nova = new Entrada(modelo.gerarId(), nomeFinal, Dinheiro.centimos(valor));
+            modelo.getRegistos().get(mes).adicionarEntrada(nova);
+            registar(Alteracao.adicionarEntrada(mes, nova));
+            historico.registar(new Comando.EntradaAdicionada(mes, nova));
+            publicar(new Evento.ItemAdicionado(mes, Evento.Item.de(nova)));
+        });
+    }
+
+    public void removerEntrada(int idEntrada) {
+        exclusivo(() -> {
+            Registo registo = modelo.getRegistos().get(dataModelo);
+            Entrada removida = registo != null ? registo.removerEntrada(idEntrada) : null;
+            if (removida != null) {
+                registar(Alteracao.removerEntrada(dataModelo, idEntrada));
+                historico.registar(new Comando.EntradaRemovida(dataModelo, removida));
+                publicar(new Evento.ItemRemovido(dataModelo, Evento.Item.de(removida)));
+            }
+        });
+    }
+
+    public void editarEntrada(int idEntrada, double novoValor) {
+        exclusivo(() -> {
+            Registo registo = modelo.getRegistos().get(dataModelo);
+            long centimos = Dinheiro.centimos(novoValor);
+            Entrada antes = registo != null ? registo.getEntradas().get(idEntrada) : null;
+            if (antes != null && registo.editarEntrada(idEntrada, centimos)) {
+                registar(Alteracao.editarEntrada(dataModelo, idEntrada, centimos));
+                historico.registar(new Comando.EntradaEditada(dataModelo, idEntrada, antes.getMontante(), centimos));
+                publicar(new Evento.ItemEditado(dataModelo, Evento.Item.de(antes), Evento.Item.de(registo.getEntradas().get(idEntrada))));
+            }
+        });
+    }
+
+    // ==========================================
+    // DESFAZER / REFAZER
+    // ==========================================
+
+    /**
+     * Desfaz a última alteração (ou o último lote/importação).
+     *
+     * @return false se não havia nada para desfazer.
+     */
+    public boolean desfazer() {
+        return exclusivo(() -> {
+            Comando c = historico.desfazer();
+            if (c != null) {
+                marcarImportacao(c, true);
+                aplicarComando(c, true);
+                publicar(c.meses());
+            }
+            return c != null;
+        });
+    }
+
+    /**
+     * Refaz a última alteração desfeita.
+     *
+     * @return false se não havia nada para refazer.
+     */
+    public boolean refazer() {
+        return exclusivo(() -> {
+            Comando c = historico.refazer();
+            if (c != null) {
+                marcarImportacao(c, false);
+                aplicarComando(c, false);
+                publicar(c.meses());
+            }
+            return c != null;
+        });
+    }
+
+    /**
+     * Aplica um comando (ou o seu inverso) ao modelo, e grava-o no journal como qualquer outra alteração.
+     */
+    private void aplicarComando(Comando comando, boolean desfazer) {
+        switch (comando) {
+            case Comando.DespesaAdicionada c -> {
+                if (desfazer) retirarDespesa(c.mes(), c.despesa().getIdDespesa());
+                else reporDespesa(c.mes(), c.despesa());
+            }
+            case Comando.DespesaRemovida c -> {
+                if (desfazer) reporDespesa(c.mes(), c.despesa());
+                else retirarDespesa(c.mes(), c.despesa().getIdDespesa());
+            }
+            case Comando.DespesaEditada c -> {
+                Registo r = modelo.getRegistos().get(c.mes());
+                long valor = desfazer ? c.antes() : c.depois();
+                if (r != null && r.editarDespesa(c.id(), valor)) registar(Alteracao.editarDespesa(c.mes(), c.id(), valor));
+            }
+            case Comando.PagaMarcada c -> {
+                Registo r = modelo.getRegistos().get(c.mes());
+                boolean paga = desfazer != c.paga();
+                if (r != null && r.marcarPaga(c.id(), paga)) registar(Alteracao.marcarPaga(c.mes(), c.id(), paga));
+            }
+            case Comando.EntradaAdicionada c -> {
+                if (desfazer) retirarEntrada(c.mes(), c.entrada().getIdEntrada());
+                else reporEntrada(c.mes(), c.entrada());
+            }
+            case Comando.EntradaRemovida c -> {
+                if (desfazer) reporEntrada(c.mes(), c.entrada());
+                else retirarEntrada(c.mes(), c.entrada().getIdEntrada());
+            }
+            case Comando.EntradaEditada c -> {
+                Registo r = modelo.getRegistos().get(c.mes());
+                long valor = desfazer ? c.antes() : c.depois();
+                if (r != null && r.editarEntrada(c.id(), valor)) registar(Alteracao.editarEntrada(c.mes(), c.id(), valor));
+            }
+            case Comando.RendimentoAtualizado c -> {
+                Registo r = modelo.getRegistos().get(c.mes());
+                long valor = desfazer ? c.antes() : c.depois();
+                if (r != null) {
+                    r.setRendimento(valor);
+                    registar(Alteracao.atualizarRendimento(c.mes(), valor));
+                }
+            }
+            case Comando.SerieAlterada c -> {
+                List<Alteracao> passos = Alteracao.reporRecorrente(modelo.getRecorrente(c.id()), desfazer ? c.antes() : c.depois());
+                for (Alteracao a : passos) a.aplicar(modelo);
+                registarTodas(passos);
+            }
+            case Comando.ItensAdicionados c -> {
+                Registo r = modelo.getRegistos().get(c.mes());
+                if (r == null) return;
+                List<Alteracao> passos = new ArrayList<>(c.despesas().size() + c.entradas().size());
+                if (desfazer) {
+                    // Do id maior para o menor: tirar do fim das colunas não desloca nada
+                    for (int i = c.entradas().size() - 1; i >= 0; i--) {
+                        int id = c.entradas().get(i).getIdEntrada();
+                        if (r.removerEntrada(id) != null) passos.add(Alteracao.removerEntrada(c.mes(), id));
+                    }
+                    for (int i = c.despesas().size() - 1; i >= 0; i--) {
+                        int id = c.despesas().get(i).getIdDespesa();
+                        if (r.removerDespesa(id) != null) passos.add(Alteracao.removerDespesa(c.mes(), id));
+                    }
+                } else {
+                    r.adicionarTodas(c.despesas(), c.entradas());
+                    for (Despesa d : c.despesas()) passos.add(Alteracao.adicionarDespesa(c.mes(), d));
+                    for (Entrada en : c.entradas()) passos.add(Alteracao.adicionarEntrada(c.mes(), en));
+                }
+                registarTodas(passos);
+            }
+            case Comando.Varios c -> {
+                List<Comando> comandos = c.comandos();
+                for (int i = 0; i < comandos.size(); i++) {
+                    aplicarComando(comandos.get(desfazer ? comandos.size() - 1 - i : i), desfazer);
+                }
+            }
         }
+    }
+
+    private void retirarDespesa(YearMonth mes, int id) {
+        Registo r = modelo.getRegistos().get(mes);
+        if (r != null && r.removerDespesa(id) != null) registar(Alteracao.removerDespesa(mes, id));
+    }
 
-        Registo registoAtual = getRegistoAtual();
-        int novoId = gerarProximoId(); 
+    private void reporDespesa(YearMonth mes, Despesa d) {
+        Registo r = modelo.getRegistos().get(mes);
+        if (r == null) return;
+        r.adicionarDespesa(d);
+        registar(Alteracao.adicionarDespesa(mes, d));
+    }
 
-        Entrada nova = new Entrada(novoId, nome, valor);
-        registoAtual.adicionarEntrada(nova);
+    private void retirarEntrada(YearMonth mes, int id) {
+        Registo r = modelo.getRegistos().get(mes);
+        if (r != null && r.removerEntrada(id) != null) registar(Alteracao.removerEntrada(mes, id));
     }
 
-    public void removerEntrada(int idEntrada) {
-        Registo registo = getRegistoAtual();
-        if (registo != null) {
-            registo.getEntradas().remove(idEntrada);
+    private void reporEntrada(YearMonth mes, Entrada en) {
+        Registo r = modelo.getRegistos().get(mes);
+        if (r == null) return;
+        r.adicionarEntrada(en);
+        registar(Alteracao.adicionarEntrada(mes, en));
+    }
+
+    // ==========================================
+    // LOTES
+    // ==========================================
+
+    /**
+     * Aplica várias operações como se fossem uma só: ou são todas aplicadas, ou nenhuma.
+     *
+     * Primeiro valida todas (os itens a alterar têm de existir e não podem ter sido removidos antes no
+     * mesmo lote). Depois reserva os ids de todos os itens novos de uma vez, aplica as alterações, e junta
+     * os itens novos de cada mês num só lote, por isso os totais de cada mês são refeitos uma vez.
+     * O journal recebe tudo numa só escrita e o autosave é avisado uma vez.
+     *
+     * @param operacoes Operações, pela ordem em que devem ser aplicadas
+     * @return Os meses alterados, por ordem, para a vista se atualizar uma só vez
+     *         (uma despesa fixa também aparece nos meses seguintes ao seu)
+     * @throws IllegalArgumentException Se alguma operação for inválida; nesse caso nada é aplicado
+     */
+    public NavigableSet<YearMonth> aplicarLote(List<Operacao> operacoes) {
+        for (int i = 0; i < operacoes.size(); i++) {
+            Operacao op = operacoes.get(i);
+            if (op == null || op.mes() == null) {
+                throw new IllegalArgumentException("Operação " + i + ": falta o mês");
+            }
+            double valor = switch (op) {
+                case Operacao.AdicionarDespesa o -> o.valor();
+                case Operacao.EditarDespesa o -> o.valor();
+                case Operacao.AdicionarEntrada o -> o.valor();
+                case Operacao.EditarEntrada o -> o.valor();
+                case Operacao.AtualizarRendimento o -> o.valor();
+                default -> 0;
+            };
+            if (!Double.isFinite(valor)) {
+                throw new IllegalArgumentException("Operação " + i + ": valor inválido " + valor);
+            }
         }
+
+        return exclusivo(() -> {
+            validarLote(operacoes);
+            return aplicarLoteValidado(operacoes);
+        });
     }
 
-    public void editarEntrada(int idEntrada, double novoValor) {
-        Registo registo = getRegistoAtual();
-        if (registo != null) {
-            Entrada entrada = registo.getEntradas().get(idEntrada);
-            if (entrada != null) {
-                entrada.setMontante(novoValor);
+    /**
+     * Verifica, sem alterar nada, que cada item referido existe no momento em que a operação é aplicada.
+     */
+    private void validarLote(List<Operacao> operacoes) {
+        Map<YearMonth, Set<Integer>> despesasRemovidas = new HashMap<>();
+        Map<YearMonth, Set<Integer>> entradasRemovidas = new HashMap<>();
+
+        for (int i = 0; i < operacoes.size(); i++) {
+            switch (operacoes.get(i)) {
+                case Operacao.RemoverDespesa o -> {
+                    despesaDoLote(i, o.mes(), o.id(), despesasRemovidas);
+                    despesasRemovidas.computeIfAbsent(o.mes(), m -> new HashSet<>()).add(o.id());
+                }
+                case Operacao.EditarDespesa o -> despesaDoLote(i, o.mes(), o.id(), despesasRemovidas);
+                case Operacao.MarcarPaga o -> {
+                    if (!(despesaDoLote(i, o.mes(), o.id(), despesasRemovidas) instanceof DespesaFixa)) {
+                        throw new IllegalArgumentException("Operação " + i + ": a despesa " + o.id() + " não é fixa");
+                    }
+                }
+                case Operacao.RemoverEntrada o -> {
+                    entradaDoLote(i, o.mes(), o.id(), entradasRemovidas);
+                    entradasRemovidas.computeIfAbsent(o.mes(), m -> new HashSet<>()).add(o.id());
+                }
+                case Operacao.EditarEntrada o -> entradaDoLote(i, o.mes(), o.id(), entradasRemovidas);
+                default -> { } // As adições e o rendimento criam o mês se ainda não existir
             }
         }
     }
-}
\ No newline at end of file
+
+    private Despesa despesaDoLote(int i, YearMonth mes, int id, Map<YearMonth, Set<Integer>> removidas) {
+        Registo r = modelo.getRegistos().get(mes);
+        Despesa d = r != null && !removidas.getOrDefault(mes, Set.of()).contains(id) ? r.getDespesa(id) : null;
+        if (d == null) {
+            throw new IllegalArgumentException("Operação " + i + ": não existe a despesa " + id + " em " + mes);
+        }
+        return d;
+    }
+
+    private void entradaDoLote(int i, YearMonth mes, int id, Map<YearMonth, Set<Integer>> removidas) {
+        Registo r = modelo.getRegistos().get(mes);
+        if (r == null || removidas.getOrDefault(mes, Set.of()).contains(id) || !r.getEntradas().containsKey(id)) {
+            throw new IllegalArgumentException("Operação " + i + ": não existe a entrada " + id + " em " + mes);
+        }
+    }
+
+    private NavigableSet<YearMonth> aplicarLoteValidado(List<Operacao> operacoes) {
+        int novos = 0;
+        for (Operacao op : operacoes) {
+            if (op instanceof Operacao.AdicionarDespesa || op instanceof Operacao.AdicionarEntrada) novos++;
+        }
+        int id = novos > 0 ? modelo.reservarIds(novos) : 0;
+
+        NavigableSet<YearMonth> meses = new TreeSet<>();
+        List<Alteracao> alteracoes = new ArrayList<>(operacoes.size());
+        List<Comando> comandos = new ArrayList<>();
+        // Os itens novos só são inseridos no fim, mês a mês: nenhuma outra operação do lote os pode referir
+        Map<YearMonth, List<Despesa>> despesasNovas = new TreeMap<>();
+        Map<YearMonth, List<Entrada>> entradasNovas = new TreeMap<>();
+
+        for (Operacao op : operacoes) {
+            YearMonth mes = op.mes();
+            meses.add(mes);
+            switch (op) {
+                case Operacao.AdicionarDespesa o when o.fixa() -> {
+                    DespesaRecorrente nova = new DespesaRecorrente(id++, formatarNome(o.nome(), "Despesa sem nome"), Dinheiro.centimos(o.valor()), mes);
+                    modelo.adicionarRecorrente(nova);
+                    alteracoes.add(Alteracao.criarRecorrente(nova));
+                    comandos.add(new Comando.SerieAlterada(nova.getId(), null, nova));
+                }
+                case Operacao.AdicionarDespesa o -> despesasNovas.computeIfAbsent(mes, m -> new ArrayList<>())
+                        .add(new Despesa(id++, formatarNome(o.nome(), "Despesa sem nome"), Dinheiro.centimos(o.valor())));
+                case Operacao.AdicionarEntrada o -> entradasNovas.computeIfAbsent(mes, m -> new ArrayList<>())
+                        .add(new Entrada(id++, formatarNome(o.nome(), "Entrada sem nome"), Dinheiro.centimos(o.valor())));
+                case Operacao.RemoverDespesa o -> {
+                    Registo r = modelo.getRegistos().get(mes);
+                    DespesaRecorrente serie = r.getDespesa(o.id()) instanceof DespesaFixa df && df.isRecorrente()
+                            ? modelo.getRecorrente(df.getIdSerie()).clone() : null;
+                    Despesa removida = r.removerDespesa(o.id());
+                    alteracoes.add(Alteracao.removerDespesa(mes, o.id()));
+                    comandos.add(serie != null
+                            ? new Comando.SerieAlterada(serie.getId(), serie, modelo.getRecorrente(serie.getId()).clone())
+                            : new Comando.DespesaRemovida(mes, removida));
+                }
+                case Operacao.EditarDespesa o -> {
+                    long centimos = Dinheiro.centimos(o.valor());
+                    Registo r = modelo.getRegistos().get(mes);
+                    long antes = r.getDespesa(o.id()).getMontante();
+                    r.editarDespesa(o.id(), centimos);
+                    alteracoes.add(Alteracao.editarDespesa(mes, o.id(), centimos));
+                    comandos.add(new Comando.DespesaEditada(mes, o.id(), antes, centimos));
+                }
+                case Operacao.MarcarPaga o -> {
+                    Registo r = modelo.getRegistos().get(mes);
+                    boolean mudou = ((DespesaFixa) r.getDespesa(o.id())).isPago() != o.paga();
+                    r.marcarPaga(o.id(), o.paga());
+                    alteracoes.add(Alteracao.marcarPaga(mes, o.id(), o.paga()));
+                    if (mudou) comandos.add(new Comando.PagaMarcada(mes, o.id(), o.paga()));
+                }
+                case Operacao.RemoverEntrada o -> {
+                    Entrada removida = modelo.getRegistos().get(mes).removerEntrada(o.id());
+                    alteracoes.add(Alteracao.removerEntrada(mes, o.id()));
+                    comandos.add(new Comando.EntradaRemovida(mes, removida));
+                }
+                case Operacao.EditarEntrada o -> {
+                    long centimos = Dinheiro.centimos(o.valor());
+                    Registo r = modelo.getRegistos().get(mes);
+                    long antes = r.getEntradas().get(o.id()).getMontante();
+                    r.editarEntrada(o.id(), centimos);
+                    alteracoes.add(Alteracao.editarEntrada(mes, o.id(), centimos));
+                    comandos.add(new Comando.EntradaEditada(mes, o.id(), antes, centimos));
+                }
+                case Operacao.AtualizarRendimento o -> {
+                    long centimos = Dinheiro.centimos(o.valor());
+                    Registo r = criarRegistoSeNaoExiste(mes);
+                    long antes = r.getRendimento();
+                    r.setRendimento(centimos);
+                    alteracoes.add(Alteracao.atualizarRendimento(mes, centimos));
+                    comandos.add(new Comando.RendimentoAtualizado(mes, antes, centimos));
+                }
+            }
+        }
+
+        Set<YearMonth> comNovos = new TreeSet<>(despesasNovas.keySet());
+        comNovos.addAll(entradasNovas.keySet());
+        for (YearMonth mes : comNovos) {
+            List<Despesa> despesas = despesasNovas.getOrDefault(mes, List.of());
+            List<Entrada> entradas = entradasNovas.getOrDefault(mes, List.of());
+            criarRegistoSeNaoExiste(mes).adicionarTodas(despesas, entradas);
+            for (Despesa d : despesas) alteracoes.add(Alteracao.adicionarDespesa(mes, d));
+            for (Entrada en : entradas) alteracoes.add(Alteracao.adicionarEntrada(mes, en));
+            comandos.add(new Comando.ItensAdicionados(mes, despesas, entradas));
+        }
+
+        if (!comandos.isEmpty()) {
+            Comando.Varios lote = new Comando.Varios(comandos);
+            historico.registar(lote);
+            publicar(lote.meses());
+        }
+        registarTodas(alteracoes);
+        return meses;
+    }
+
+    // ==========================================
+    // IMPORTAÇÃO DE EXTRATOS
+    // ==========================================
+
+    /**
+     * Importa um extrato bancário (CSV ou OFX): as saídas ficam despesas e as entradas entradas,
+     * cada uma no mês da sua data (os meses que faltam são criados).
+     *
+     * O ficheiro é lido sem lock. Os ids de todos os movimentos são reservados de uma vez e cada mês
+     * é inserido em lote com o lock tomado só durante esse mês, por isso a interface continua a responder.
+     * Desfazer a importação a meio desfaz os meses já inseridos e para-a.
+     * Não deve ser chamado no EDT.
+     *
+     * @param ficheiro Extrato a importar
+     * @param progresso Recebe a fração já feita (0 a 1)
+     * @return O que foi lido do extrato
+     * @throws IllegalStateException Se a importação foi desfeita antes de terminar
+     */
+    public ImportadorExtratos.Resultado importarExtrato(Path ficheiro, DoubleConsumer progresso) throws IOException {
+        // A leitura é a parte demorada: conta como 90% do progresso
+        ImportadorExtratos.Resultado lido = ImportadorExtratos.ler(ficheiro, p -> progresso.accept(p * 0.9));
+        int total = lido.movimentos();
+        if (total == 0) {
+            progresso.accept(1);
+            return lido;
+        }
+
+        ImportacaoEmCurso importacao = new ImportacaoEmCurso();
+        int id = exclusivo(() -> {
+            importacoes.add(importacao);
+            return modelo.reservarIds(total);
+        });
+        int inseridos = 0;
+        try {
+            // A importação inteira desfaz-se de uma vez. O comando entra no histórico com o primeiro mês e cada
+            // mês seguinte troca-o por um com mais esse mês, no mesmo lugar: o que for feito entretanto fica depois dela
+            for (Map.Entry<YearMonth, List<ImportadorExtratos.Movimento>> e : lido.porMes().entrySet()) {
+                int primeiroId = id;
+                boolean continua = exclusivo(() -> {
+                    if (importacao.desfeita) return false;
+                    List<Comando> comandos = new ArrayList<>();
+                    if (importacao.comando != null) comandos.addAll(importacao.comando.comandos());
+                    comandos.add(inserirMovimentos(e.getKey(), e.getValue(), primeiroId));
+                    Comando.Varios novo = new Comando.Varios(comandos);
+                    if (importacao.comando == null) {
+                        historico.registar(novo);
+                    } else {
+                        // Se o histórico encheu e já a esqueceu, a importação continua sem se poder desfazer
+                        historico.substituir(importacao.comando, novo);
+                    }
+                    importacao.comando = novo;
+                    return true;
+                });
+                if (!continua) {
+                    throw new IllegalStateException("a importação foi desfeita antes de terminar (" + inseridos + " de " + total + " movimentos)");
+                }
+                id += e.getValue().size();
+                inseridos += e.getValue().size();
+                progresso.accept(0.9 + 0.1 * inseridos / total);
+            }
+        } finally {
+            exclusivo(() -> importacoes.remove(importacao));
+        }
+        return lido;
+    }
+
+    /**
+     * Importação a decorrer noutra thread: o comando que tem no histórico, e se foi desfeita entretanto.
+     */
+    private static final class ImportacaoEmCurso {
+        Comando.Varios comando;
+        boolean desfeita;
+    }
+
+    /**
+     * Se o comando desfeito/refeito é o de uma importação a decorrer, a importação fica a saber.
+     */
+    private void marcarImportacao(Comando c, boolean desfeita) {
+        for (ImportacaoEmCurso i : importacoes) {
+            if (i.comando == c) i.desfeita = desfeita;
+        }
+    }
+
+    /**
+     * Insere os movimentos de um mês num só lote, com os ids a partir de {@code primeiroId}.
+     */
+    private Comando inserirMovimentos(YearMonth mes, List<ImportadorExtratos.Movimento> movimentos, int primeiroId) {
+        Registo registo = criarRegistoSeNaoExiste(mes);
+        List<Despesa> despesas = new ArrayList<>();
+        List<Entrada> entradas = new ArrayList<>();
+        List<Alteracao> alteracoes = new ArrayList<>(movimentos.size());
+
+        int id = primeiroId;
+        for (ImportadorExtratos.Movimento m : movimentos) {
+            if (m.montante() < 0) {
+                Despesa d = new Despesa(id++, m.codigoNome(), -m.montante(), m.dia());
+                despesas.add(d);
+                alteracoes.add(Alteracao.adicionarDespesa(mes, d));
+            } else {
+                Entrada en = new Entrada(id++, m.codigoNome(), m.montante(), m.dia());
+                entradas.add(en);
+                alteracoes.add(Alteracao.adicionarEntrada(mes, en));
+            }
+        }
+        registo.adicionarTodas(despesas, entradas);
+
+        registarTodas(alteracoes);
+        publicar(new Evento.MesesAlterados(mes, mes));
+        return new Comando.ItensAdicionados(mes, despesas, entradas);
+    }
+}
@@ -0,0 +1,32 @@
+package controller;
+
+import java.time.YearMonth;
+
+/**
+ * Operação de um lote (ver {@link MoneyCountController#aplicarLote}).
+ * Cada uma corresponde a um método do controlador, mas indica o mês em vez de usar o mês que está a ser visto.
+ * Os valores estão em euros, como no resto do controlador.
+ */
+public sealed interface Operacao {
+
+    YearMonth mes();
+
+    /**
+     * @param fixa true para uma despesa fixa (uma série que aparece neste mês e nos seguintes)
+     */
+    record AdicionarDespesa(YearMonth mes, String nome, double valor, boolean fixa) implements Operacao { }
+
+    record RemoverDespesa(YearMonth mes, int id) implements Operacao { }
+
+    record EditarDespesa(YearMonth mes, int id, double valor) implements Operacao { }
+
+    record MarcarPaga(YearMonth mes, int id, boolean paga) implements Operacao { }
+
+    record AdicionarEntrada(YearMonth mes, String nome, double valor) implements Operacao { }
+
+    record RemoverEntrada(YearMonth mes, int id) implements Operacao { }
+
+    record EditarEntrada(YearMonth mes, int id, double valor) implements Operacao { }
+
+    record AtualizarRendimento(YearMonth mes, double valor) implements Operacao { }
+}
@@ -0,0 +1,177 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alteração elementar ao modelo, tal como fica gravada no journal.
+ * Cada alteração descreve o estado final de um único elemento (e não um delta),
+ * por isso voltar a aplicar a mesma sequência produz sempre o mesmo modelo.
+ *
+ * @param tipo Tipo de alteração.
+ * @param mes Mês do registo afetado (nas despesas recorrentes, o mês a partir do qual a alteração vale).
+ * @param id Id da despesa/entrada ou da despesa recorrente afetada (ignorado nas alterações ao registo).
+ * @param nome Nome da despesa/entrada (só nas adições).
+ * @param valor Montante ou rendimento, em cêntimos.
+ * @param flag Estado "paga" das despesas fixas.
+ * @param dia Dia da despesa/entrada em epoch-day (só nas adições; {@link #SEM_DIA} nas outras).
+ */
+public record Alteracao(Tipo tipo, YearMonth mes, int id, String nome, long valor, boolean flag, long dia) {
+
+    /** Alteração sem dia (todas menos as adições). */
+    public static final long SEM_DIA = Long.MIN_VALUE;
+
+    public enum Tipo {
+        CRIAR_REGISTO,
+        ATUALIZAR_RENDIMENTO,
+        ADICIONAR_DESPESA,
+        ADICIONAR_DESPESA_FIXA,
+        REMOVER_DESPESA,
+        EDITAR_DESPESA,
+        MARCAR_PAGA,
+        ADICIONAR_ENTRADA,
+        REMOVER_ENTRADA,
+        EDITAR_ENTRADA,
+        // Os tipos novos vão sempre para o fim: o journal guarda a posição de cada um
+        CRIAR_RECORRENTE,
+        ALTERAR_RECORRENTE,
+        TERMINAR_RECORRENTE
+    }
+
+    public Alteracao(Tipo tipo, YearMonth mes, int id, String nome, long valor, boolean flag) {
+        this(tipo, mes, id, nome, valor, flag, SEM_DIA);
+    }
+
+    public static Alteracao criarRegisto(YearMonth mes, long rendimento) {
+        return new Alteracao(Tipo.CRIAR_REGISTO, mes, -1, null, rendimento, false);
+    }
+
+    public static Alteracao atualizarRendimento(YearMonth mes, long rendimento) {
+        return new Alteracao(Tipo.ATUALIZAR_RENDIMENTO, mes, -1, null, rendimento, false);
+    }
+
+    public static Alteracao adicionarDespesa(YearMonth mes, Despesa d) {
+        if (d instanceof DespesaFixa df) {
+            return new Alteracao(Tipo.ADICIONAR_DESPESA_FIXA, mes, df.getIdDespesa(), df.getNome(), df.getMontante(), df.isPago(),
+                    df.getDia().toEpochDay());
+        }
+        return new Alteracao(Tipo.ADICIONAR_DESPESA, mes, d.getIdDespesa(), d.getNome(), d.getMontante(), false, d.getDia().toEpochDay());
+    }
+
+    public static Alteracao removerDespesa(YearMonth mes, int id) {
+        return new Alteracao(Tipo.REMOVER_DESPESA, mes, id, null, 0, false);
+    }
+
+    public static Alteracao editarDespesa(YearMonth mes, int id, long valor) {
+        return new Alteracao(Tipo.EDITAR_DESPESA, mes, id, null, valor, false);
+    }
+
+    public static Alteracao marcarPaga(YearMonth mes, int id, boolean paga) {
+        return new Alteracao(Tipo.MARCAR_PAGA, mes, id, null, 0, paga);
+    }
+
+    public static Alteracao adicionarEntrada(YearMonth mes, Entrada e) {
+        return new Alteracao(Tipo.ADICIONAR_ENTRADA, mes, e.getIdEntrada(), e.getNome(), e.getMontante(), false, e.getDia().toEpochDay());
+    }
+
+    public static Alteracao removerEntrada(YearMonth mes, int id) {
+        return new Alteracao(Tipo.REMOVER_ENTRADA, mes, id, null, 0, false);
+    }
+
+    public static Alteracao editarEntrada(YearMonth mes, int id, long valor) {
+        return new Alteracao(Tipo.EDITAR_ENTRADA, mes, id, null, valor, false);
+    }
+
+    public static Alteracao criarRecorrente(DespesaRecorrente t) {
+        return new Alteracao(Tipo.CRIAR_RECORRENTE, t.getInicio(), t.getId(), t.getNome(), t.getMontanteEm(t.getInicio()), false);
+    }
+
+    public static Alteracao alterarRecorrente(YearMonth desde, int id, long valor) {
+        return new Alteracao(Tipo.ALTERAR_RECORRENTE, desde, id, null, valor, false);
+    }
+
+    public static Alteracao terminarRecorrente(YearMonth desde, int id) {
+        return new Alteracao(Tipo.TERMINAR_RECORRENTE, desde, id, null, 0, false);
+    }
+
+    /**
+     * Alterações que levam uma série do estado atual a outro (ex: desfazer uma alteração "a partir de agora").
+     * A série é apagada e criada de novo escalão a escalão, só com tipos que o journal já conhece.
+     *
+     * @param atual A série tal como está no modelo (null se não existir).
+     * @param alvo O estado a repor (null para apagar a série).
+     */
+    public static List<Alteracao> reporRecorrente(DespesaRecorrente atual, DespesaRecorrente alvo) {
+        List<Alteracao> passos = new ArrayList<>();
+        if (atual != null) passos.add(terminarRecorrente(atual.getInicio(), atual.getId()));
+        if (alvo == null) return passos;
+
+        int id = alvo.getId();
+        YearMonth inicio = alvo.getInicio();
+        passos.add(new Alteracao(Tipo.CRIAR_RECORRENTE, inicio, id, alvo.getNome(), alvo.getMontantes().get(inicio), false));
+        for (Map.Entry<YearMonth, Long> e : alvo.getMontantes().tailMap(inicio, false).entrySet()) {
+            passos.add(alterarRecorrente(e.getKey(), id, e.getValue()));
+        }
+        // Por esta ordem: apagar um mês também lhe tira o ajuste e o "paga"
+        for (YearMonth mes : alvo.getRemovidos()) passos.add(removerDespesa(mes, id));
+        for (YearMonth mes : alvo.getPagos()) passos.add(marcarPaga(mes, id, true));
+        for (Map.Entry<YearMonth, Long> e : alvo.getAjustes().entrySet()) {
+            passos.add(editarDespesa(e.getKey(), id, e.getValue()));
+        }
+        if (alvo.getFim() != null) passos.add(terminarRecorrente(alvo.getFim().plusMonths(1), id));
+        return passos;
+    }
+
+    /**
+     * Aplica a alteração ao modelo. Alterações a meses que não existem são ignoradas.
+     *
+     * @param modelo Modelo a alterar.
+     */
+    public void aplicar(MoneyCount modelo) {
+        // As despesas recorrentes não pertencem a nenhum mês em particular
+        switch (tipo) {
+            case CRIAR_RECORRENTE -> {
+                modelo.adicionarRecorrente(new DespesaRecorrente(id, nome, valor, mes));
+                return;
+            }
+            case ALTERAR_RECORRENTE -> {
+                modelo.alterarRecorrenteDesde(id, mes, valor);
+                return;
+            }
+            case TERMINAR_RECORRENTE -> {
+                modelo.terminarRecorrente(id, mes);
+                return;
+            }
+            default -> { }
+        }
+
+        Registo r = modelo.getRegistos().get(mes);
+
+        if (tipo == Tipo.CRIAR_REGISTO) {
+            if (r == null) modelo.adicionarRegisto(new Registo(mes, valor));
+            return;
+        }
+        if (r == null) return;
+
+        // Os ids reproduzidos já foram dados: a sequência tem de passar à frente deles
+        if (id >= 0) modelo.avancarProximoId(id + 1);
+
+        // Só as adições levam o dia do item
+        LocalDate diaItem = dia == SEM_DIA ? LocalDate.now() : LocalDate.ofEpochDay(dia);
+        switch (tipo) {
+            case ATUALIZAR_RENDIMENTO -> r.setRendimento(valor);
+            case ADICIONAR_DESPESA -> r.adicionarDespesa(new Despesa(id, nome, valor, diaItem));
+            case ADICIONAR_DESPESA_FIXA -> r.adicionarDespesa(new DespesaFixa(id, nome, valor, flag, diaItem));
+            case REMOVER_DESPESA -> r.removerDespesa(id);
+            case EDITAR_DESPESA -> r.editarDespesa(id, valor);
+            case MARCAR_PAGA -> r.marcarPaga(id, flag);
+            case ADICIONAR_ENTRADA -> r.adicionarEntrada(new Entrada(id, nome, valor, diaItem));
+            case REMOVER_ENTRADA -> r.removerEntrada(id);
+            case EDITAR_ENTRADA -> r.editarEntrada(id, valor);
+            default -> { }
+        }
+    }
+}
@@ -1,26 +1,47 @@
 package model;
 
-import java.io.Serializable;
 import java.time.LocalDate;
 
-public class Despesa implements Serializable {
+public class Despesa {
 
     private int idDespesa;
-    private String nome;
-    private double montante;
+    private int codigoNome; // Código do nome no DicionarioNomes
+    private long montante; // Em cêntimos
     private LocalDate dia;
 
     /**
      * Construtor parametrizado (Agora recebe o ID externamente).
      * * @param idDespesa Id único da despesa.
      * @param nome Nome da despesa.
-     * @param montante Montante gasto na despesa.
+     * @param montante Montante gasto na despesa (em cêntimos).
      */
-    public Despesa(int idDespesa, String nome, double montante) {
+    public Despesa(int idDespesa, String nome, long montante) {
+        this(idDespesa, nome, montante, LocalDate.now());
+    }
+
+    /**
+     * Construtor parametrizado com o dia do registo (usado ao ler do ficheiro).
+     * * @param idDespesa Id único da despesa.
+     * @param nome Nome da despesa.
+     * @param montante Montante gasto na despesa (em cêntimos).
+     * @param dia Dia em que a despesa foi registada.
+     */
+    public Despesa(int idDespesa, String nome, long montante, LocalDate dia) {
+        this(idDespesa, DicionarioNomes.codigo(nome), montante, dia);
+    }
+
+    /**
+     * Construtor com o nome já no dicionário (usado ao ler do ficheiro, sem procurar o nome de cada item).
+     * * @param idDespesa Id único da despesa.
+     * @param codigoNome Código do nome no {@link DicionarioNomes}.
+     * @param montante Montante gasto na despesa (em cêntimos).
+     * @param dia Dia em que a despesa foi registada.
+     */
+    public Despesa(int idDespesa, int codigoNome, long montante, LocalDate dia) {
         this.idDespesa = idDespesa;
-        this.nome = nome;
+        this.codigoNome = codigoNome;
         this.montante = montante;
-        this.dia = LocalDate.now();
+        this.dia = dia;
     }
 
     /**
@@ -29,7 +50,7 @@ public class Despesa implements Serializable {
      */
     public Despesa(Despesa outra) {
         this.idDespesa = outra.idDespesa;
-        this.nome = outra.nome;
+        this.codigoNome = outra.codigoNome;
         this.montante = outra.montante;
         this.dia = LocalDate.of(outra.dia.getYear(), outra.dia.getMonth(), outra.dia.getDayOfMonth());
     }
@@ -43,7 +64,10 @@ public class Despesa implements Serializable {
         return new Despesa(this);
     }
     
-    public double getMontante() {
+    /**
+     * @return Montante em cêntimos.
+     */
+    public long getMontante() {
         return this.montante;
     }
 
@@ -52,10 +76,22 @@ public class Despesa implements Serializable {
     }
 
     public String getNome() {
-        return this.nome;
+        return DicionarioNomes.nome(this.codigoNome);
+    }
+
+    /**
+     * @return Código do nome no {@link DicionarioNomes} (para agrupar por nome sem comparar strings).
+     */
+    public int getCodigoNome() {
+        return this.codigoNome;
+    }
+
+    public LocalDate getDia() {
+        return this.dia;
     }
 
-    public void setMontante(double montante){
+    // Só o Registo altera o montante, para manter os seus totais certos
+    void setMontante(long montante){
         this.montante = montante;
     }
 }
\ No newline at end of file
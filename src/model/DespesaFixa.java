@@ -1,21 +1,65 @@
 package model;
 
-import java.io.Serializable;
+import java.time.LocalDate;
 
-public class DespesaFixa extends Despesa implements Serializable {
+public class DespesaFixa extends Despesa {
+
+    /** Valor de {@link #getIdSerie()} para uma despesa fixa que não pertence a nenhuma série. */
+    public static final int SEM_SERIE = -1;
 
     private boolean pago;
+    private final int idSerie;
 
     /**
      * Construtor parametrizado.
      * * @param idDespesa Id único da despesa.
      * @param nome Nome da despesa fixa.
-     * @param montante Montante da despesa fixa.
+     * @param montante Montante da despesa fixa (em cêntimos).
      * @param pago Indica se já foi paga.
      */
-    public DespesaFixa(int idDespesa, String nome, double montante, boolean pago) {
+    public DespesaFixa(int idDespesa, String nome, long montante, boolean pago) {
         super(idDespesa, nome, montante); // Passa o ID para a superclasse
         this.pago = pago;
+        this.idSerie = SEM_SERIE;
+    }
+
+    /**
+     * Construtor parametrizado com o dia do registo (usado ao ler do ficheiro).
+     * * @param idDespesa Id único da despesa.
+     * @param nome Nome da despesa fixa.
+     * @param montante Montante da despesa fixa (em cêntimos).
+     * @param pago Indica se já foi paga.
+     * @param dia Dia em que a despesa foi registada.
+     */
+    public DespesaFixa(int idDespesa, String nome, long montante, boolean pago, LocalDate dia) {
+        this(idDespesa, DicionarioNomes.codigo(nome), montante, pago, dia);
+    }
+
+    /**
+     * Construtor com o nome já no dicionário (usado ao ler do ficheiro).
+     * * @param idDespesa Id único da despesa.
+     * @param codigoNome Código do nome no {@link DicionarioNomes}.
+     * @param montante Montante da despesa fixa (em cêntimos).
+     * @param pago Indica se já foi paga.
+     * @param dia Dia em que a despesa foi registada.
+     */
+    public DespesaFixa(int idDespesa, int codigoNome, long montante, boolean pago, LocalDate dia) {
+        this(idDespesa, SEM_SERIE, codigoNome, montante, pago, dia);
+    }
+
+    /**
+     * Construtor de um membro de uma série (a despesa de uma {@link DespesaRecorrente} num mês).
+     * * @param idDespesa Id único da despesa.
+     * @param idSerie Id da série a que pertence.
+     * @param codigoNome Código do nome no {@link DicionarioNomes}.
+     * @param montante Montante da despesa fixa nesse mês (em cêntimos).
+     * @param pago Indica se já foi paga nesse mês.
+     * @param dia Primeiro dia do mês.
+     */
+    DespesaFixa(int idDespesa, int idSerie, int codigoNome, long montante, boolean pago, LocalDate dia) {
+        super(idDespesa, codigoNome, montante, dia);
+        this.pago = pago;
+        this.idSerie = idSerie;
     }
 
     /**
@@ -25,6 +69,7 @@ public class DespesaFixa extends Despesa implements Serializable {
     public DespesaFixa(DespesaFixa outra) {
         super(outra); // Usa o construtor cópia da superclasse
         this.pago = outra.isPago();
+        this.idSerie = outra.idSerie;
     }
 
     /**
@@ -39,7 +84,19 @@ public class DespesaFixa extends Despesa implements Serializable {
         return pago;
     }
 
-    public void setPago(boolean pago) {
+    /**
+     * @return Id da série a que a despesa pertence, ou {@link #SEM_SERIE}.
+     */
+    public int getIdSerie() {
+        return idSerie;
+    }
+
+    public boolean isRecorrente() {
+        return idSerie != SEM_SERIE;
+    }
+
+    // Só o Registo altera o estado, para manter os seus totais certos
+    void setPago(boolean pago) {
         this.pago = pago;
     }
 }
\ No newline at end of file
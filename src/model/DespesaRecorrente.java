@@ -0,0 +1,185 @@
+package model;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Despesa fixa que se repete todos os meses, guardada uma só vez no modelo.
+ * Cada mês vê uma {@link DespesaFixa} virtual com o id da série, o montante e o estado desse mês.
+ *
+ * O montante é uma função por escalões (a partir de cada mês em {@code montantes}),
+ * com ajustes pontuais para um só mês. Alterações "a partir de agora" só mexem nos escalões.
+ */
+public class DespesaRecorrente {
+
+    private final int id;
+    private final int codigoNome; // Código do nome no DicionarioNomes
+    private final YearMonth inicio;
+    private YearMonth fim; // Último mês em que existe; null enquanto não terminar
+    private final TreeMap<YearMonth, Long> montantes; // Montante a partir de cada mês
+    private final TreeMap<YearMonth, Long> ajustes;   // Montante só desse mês
+    private final TreeSet<YearMonth> pagos;
+    private final TreeSet<YearMonth> removidos;         // Meses em que foi apagada só nesse mês
+
+    /**
+     * Construtor parametrizado.
+     * @param id Id da série (vem da mesma sequência das despesas e entradas).
+     * @param nome Nome da despesa fixa.
+     * @param montante Montante a partir do primeiro mês (em cêntimos).
+     * @param inicio Primeiro mês da série.
+     */
+    public DespesaRecorrente(int id, String nome, long montante, YearMonth inicio) {
+        this(id, nome, inicio, null, new TreeMap<>(Map.of(inicio, montante)), Map.of(), Set.of(), Set.of());
+    }
+
+    /**
+     * Construtor com o estado completo (usado ao ler do ficheiro).
+     * @param id Id da série.
+     * @param nome Nome da despesa fixa.
+     * @param inicio Primeiro mês da série.
+     * @param fim Último mês da série, ou null se não tiver fim.
+     * @param montantes Montante a partir de cada mês (tem de incluir o início).
+     * @param ajustes Montantes alterados só num mês.
+     * @param pagos Meses em que está paga.
+     * @param removidos Meses de onde foi apagada.
+     */
+    public DespesaRecorrente(int id, String nome, YearMonth inicio, YearMonth fim, Map<YearMonth, Long> montantes,
+                             Map<YearMonth, Long> ajustes, Set<YearMonth> pagos, Set<YearMonth> removidos) {
+        this.id = id;
+        this.codigoNome = DicionarioNomes.codigo(nome);
+        this.inicio = inicio;
+        this.fim = fim;
+        this.montantes = new TreeMap<>(montantes);
+        this.ajustes = new TreeMap<>(ajustes);
+        this.pagos = new TreeSet<>(pagos);
+        this.removidos = new TreeSet<>(removidos);
+    }
+
+    /**
+     * Construtor cópia.
+     * @param outra Série a copiar.
+     */
+    public DespesaRecorrente(DespesaRecorrente outra) {
+        this(outra.id, outra.getNome(), outra.inicio, outra.fim, outra.montantes, outra.ajustes, outra.pagos, outra.removidos);
+    }
+
+    @Override
+    public DespesaRecorrente clone() {
+        return new DespesaRecorrente(this);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getNome() {
+        return DicionarioNomes.nome(codigoNome);
+    }
+
+    public int getCodigoNome() {
+        return codigoNome;
+    }
+
+    public YearMonth getInicio() {
+        return inicio;
+    }
+
+    public YearMonth getFim() {
+        return fim;
+    }
+
+    public NavigableMap<YearMonth, Long> getMontantes() {
+        return Collections.unmodifiableNavigableMap(montantes);
+    }
+
+    public NavigableMap<YearMonth, Long> getAjustes() {
+        return Collections.unmodifiableNavigableMap(ajustes);
+    }
+
+    public NavigableSet<YearMonth> getPagos() {
+        return Collections.unmodifiableNavigableSet(pagos);
+    }
+
+    public NavigableSet<YearMonth> getRemovidos() {
+        return Collections.unmodifiableNavigableSet(removidos);
+    }
+
+    /**
+     * @return true se a despesa aparece no mês indicado.
+     */
+    public boolean ativaEm(YearMonth mes) {
+        return !mes.isBefore(inicio) && (fim == null || !mes.isAfter(fim)) && !removidos.contains(mes);
+    }
+
+    /**
+     * @return Montante no mês, em cêntimos.
+     */
+    public long getMontanteEm(YearMonth mes) {
+        Long ajuste = ajustes.get(mes);
+        return ajuste != null ? ajuste : montantes.floorEntry(mes).getValue();
+    }
+
+    public boolean isPagaEm(YearMonth mes) {
+        return pagos.contains(mes);
+    }
+
+    /**
+     * @return A despesa tal como aparece no mês (o mês tem de estar ativo).
+     */
+    DespesaFixa instanciaEm(YearMonth mes) {
+        return new DespesaFixa(id, id, codigoNome, getMontanteEm(mes), isPagaEm(mes), mes.atDay(1));
+    }
+
+    // ==========================================
+    // ALTERAÇÕES (feitas através do modelo, que mantém os totais)
+    // ==========================================
+
+    /**
+     * Novo montante a partir de {@code mes}, inclusive. Apaga escalões e ajustes posteriores.
+     */
+    void alterarDesde(YearMonth mes, long montante) {
+        if (mes.isBefore(inicio)) mes = inicio;
+        montantes.tailMap(mes, true).clear();
+        ajustes.tailMap(mes, true).clear();
+        montantes.put(mes, montante);
+    }
+
+    /**
+     * Termina a série antes de {@code mes}: deixa de existir nesse mês e nos seguintes.
+     *
+     * @return false se a série ficou sem nenhum mês.
+     */
+    boolean terminarAntesDe(YearMonth mes) {
+        if (fim != null && fim.isBefore(mes)) return true; // Já tinha terminado antes
+        fim = mes.minusMonths(1);
+        montantes.tailMap(mes, true).clear();
+        ajustes.tailMap(mes, true).clear();
+        pagos.tailSet(mes, true).clear();
+        removidos.tailSet(mes, true).clear();
+        return !fim.isBefore(inicio);
+    }
+
+    void ajustar(YearMonth mes, long montante) {
+        ajustes.put(mes, montante);
+    }
+
+    void marcarPaga(YearMonth mes, boolean paga) {
+        if (paga) {
+            pagos.add(mes);
+        } else {
+            pagos.remove(mes);
+        }
+    }
+
+    void removerEm(YearMonth mes) {
+        removidos.add(mes);
+        ajustes.remove(mes);
+        pagos.remove(mes);
+    }
+}
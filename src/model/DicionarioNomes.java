@@ -0,0 +1,55 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dicionário global dos nomes de despesas e entradas: cada nome diferente recebe um código
+ * {@code int} denso (0, 1, 2, ...) que não muda enquanto o programa corre.
+ *
+ * Os itens guardam só o código, por isso um nome repetido em milhares de meses ("Renda",
+ * "Salário") existe uma só vez, e agrupar por nome é somar num array indexado pelo código.
+ * Os nomes nunca são retirados. Pode ser usado de várias threads (os meses também são lidos
+ * ao gravar em segundo plano).
+ */
+public final class DicionarioNomes {
+
+    private static final Map<String, Integer> codigos = new HashMap<>();
+    private static volatile String[] nomes = new String[64];
+    private static volatile int tamanho;
+
+    private DicionarioNomes() {
+    }
+
+    /**
+     * @return O código do nome, criado se o nome ainda não existir.
+     */
+    public static synchronized int codigo(String nome) {
+        Integer codigo = codigos.get(nome);
+        if (codigo != null) return codigo;
+
+        String[] atuais = nomes;
+        if (tamanho == atuais.length) {
+            atuais = Arrays.copyOf(atuais, atuais.length * 2);
+        }
+        atuais[tamanho] = nome;
+        nomes = atuais;
+        codigos.put(nome, tamanho);
+        return tamanho++;
+    }
+
+    /**
+     * @return O nome com este código (o código tem de ter vindo de {@link #codigo(String)}).
+     */
+    public static String nome(int codigo) {
+        return nomes[codigo];
+    }
+
+    /**
+     * @return Número de nomes existentes; os códigos vão de 0 a este valor - 1.
+     */
+    public static int tamanho() {
+        return tamanho;
+    }
+}
@@ -0,0 +1,51 @@
+package model;
+
+/**
+ * Montantes em cêntimos ({@code long}), para as somas serem exatas.
+ * Os euros em {@code double} só existem na fronteira com a vista e nos dados antigos.
+ */
+public final class Dinheiro {
+
+    // Abaixo disto o ciclo simples é tão rápido como o vetorial
+    private static final int MINIMO_VETORIAL = 32;
+    private static final boolean VETORIAL = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private Dinheiro() {
+    }
+
+    /**
+     * @param euros Montante em euros (arredondado ao cêntimo).
+     * @return Montante em cêntimos.
+     */
+    public static long centimos(double euros) {
+        return Math.round(euros * 100);
+    }
+
+    /**
+     * @param centimos Montante em cêntimos.
+     * @return Montante em euros, para mostrar.
+     */
+    public static double euros(long centimos) {
+        return centimos / 100.0;
+    }
+
+    /**
+     * Soma uma coluna de montantes. Usa a Vector API quando o módulo
+     * {@code jdk.incubator.vector} está carregado, e um ciclo simples quando não está.
+     *
+     * @param valores Montantes em cêntimos.
+     * @param de Primeira posição (inclusive).
+     * @param ate Última posição (exclusive).
+     * @return Soma exata.
+     */
+    public static long somar(long[] valores, int de, int ate) {
+        if (VETORIAL && ate - de >= MINIMO_VETORIAL) {
+            return SomaVetorial.somar(valores, de, ate);
+        }
+        long soma = 0;
+        for (int i = de; i < ate; i++) {
+            soma += valores[i];
+        }
+        return soma;
+    }
+}
@@ -1,26 +1,47 @@
 package model;
 
-import java.io.Serializable;
 import java.time.LocalDate;
 
-public class Entrada implements Serializable {
+public class Entrada {
 
     private int idEntrada;
-    private String nome;
-    private double montante;
+    private int codigoNome; // Código do nome no DicionarioNomes
+    private long montante; // Em cêntimos
     private LocalDate dia;
 
     /**
      * Construtor parametrizado.
      * @param idEntrada Id único da entrada.
      * @param nome Nome da fonte de rendimento (ex: "Salário", "Venda de algo").
-     * @param montante Valor da entrada de dinheiro.
+     * @param montante Valor da entrada de dinheiro (em cêntimos).
      */
-    public Entrada(int idEntrada, String nome, double montante) {
+    public Entrada(int idEntrada, String nome, long montante) {
+        this(idEntrada, nome, montante, LocalDate.now());
+    }
+
+    /**
+     * Construtor parametrizado com o dia do registo (usado ao ler do ficheiro).
+     * @param idEntrada Id único da entrada.
+     * @param nome Nome da fonte de rendimento.
+     * @param montante Valor da entrada de dinheiro (em cêntimos).
+     * @param dia Dia em que a entrada foi registada.
+     */
+    public Entrada(int idEntrada, String nome, long montante, LocalDate dia) {
+        this(idEntrada, DicionarioNomes.codigo(nome), montante, dia);
+    }
+
+    /**
+     * Construtor com o nome já no dicionário (usado ao ler do ficheiro, sem procurar o nome de cada item).
+     * @param idEntrada Id único da entrada.
+     * @param codigoNome Código do nome no {@link DicionarioNomes}.
+     * @param montante Valor da entrada de dinheiro (em cêntimos).
+     * @param dia Dia em que a entrada foi registada.
+     */
+    public Entrada(int idEntrada, int codigoNome, long montante, LocalDate dia) {
         this.idEntrada = idEntrada;
-        this.nome = nome;
+        this.codigoNome = codigoNome;
         this.montante = montante;
-        this.dia = LocalDate.now();
+        this.dia = dia;
     }
 
     /**
@@ -29,7 +50,7 @@ public class Entrada implements Serializable {
      */
     public Entrada(Entrada outra) {
         this.idEntrada = outra.idEntrada;
-        this.nome = outra.nome;
+        this.codigoNome = outra.codigoNome;
         this.montante = outra.montante;
         this.dia = LocalDate.of(outra.dia.getYear(), outra.dia.getMonth(), outra.dia.getDayOfMonth());
     }
@@ -43,7 +64,10 @@ public class Entrada implements Serializable {
         return new Entrada(this);
     }
     
-    public double getMontante() {
+    /**
+     * @return Montante em cêntimos.
+     */
+    public long getMontante() {
         return this.montante;
     }
 
@@ -52,10 +76,22 @@ public class Entrada implements Serializable {
     }
 
     public String getNome() {
-        return this.nome;
+        return DicionarioNomes.nome(this.codigoNome);
+    }
+
+    /**
+     * @return Código do nome no {@link DicionarioNomes} (para agrupar por nome sem comparar strings).
+     */
+    public int getCodigoNome() {
+        return this.codigoNome;
+    }
+
+    public LocalDate getDia() {
+        return this.dia;
     }
 
-    public void setMontante(double montante){
+    // Só o Registo altera o montante, para manter os seus totais certos
+    void setMontante(long montante){
         this.montante = montante;
     }
 }
\ No newline at end of file
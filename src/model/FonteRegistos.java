@@ -0,0 +1,24 @@
+package model;
+
+import java.time.YearMonth;
+
+/**
+ * Origem dos meses que ainda não foram carregados para memória.
+ */
+public interface FonteRegistos {
+
+    /**
+     * Lê o registo completo de um mês.
+     *
+     * @param mes Mês a carregar (existe sempre na fonte).
+     * @return Registo lido.
+     */
+    Registo carregar(YearMonth mes);
+
+    /**
+     * Liberta o ficheiro da fonte, para ele poder ser substituído (em Windows não se substitui um
+     * ficheiro mapeado). Uma leitura seguinte volta a abri-lo.
+     */
+    default void fechar() {
+    }
+}
@@ -0,0 +1,234 @@
+package model;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Mapa de id para item guardado em duas colunas ordenadas por id: um {@code int[]} com os ids
+ * e um array paralelo com os itens. Não há nós nem {@code Integer} por item.
+ *
+ * Procurar é uma pesquisa binária. Como os ids saem de uma sequência crescente, adicionar
+ * é quase sempre pôr no fim; remover desloca o resto do array.
+ * Os métodos com {@code int} não fazem boxing, e {@link #idEm}/{@link #valorEm} percorrem
+ * os itens por ordem de id sem alocar nada.
+ *
+ * @param <V> Tipo dos itens.
+ */
+class MapaIds<V> extends AbstractMap<Integer, V> {
+
+    private static final int CAPACIDADE_INICIAL = 8;
+    private static final int[] SEM_IDS = new int[0];
+    private static final Object[] SEM_VALORES = new Object[0];
+
+    private int[] ids = SEM_IDS;
+    private Object[] valores = SEM_VALORES;
+    private int tamanho;
+
+    MapaIds() {
+    }
+
+    /**
+     * @param capacidade Número de itens que cabem sem crescer.
+     */
+    MapaIds(int capacidade) {
+        this.ids = new int[capacidade];
+        this.valores = new Object[capacidade];
+    }
+
+    /**
+     * Cópia das duas colunas; os itens são os mesmos objetos.
+     */
+    MapaIds(MapaIds<V> outro) {
+        this.ids = outro.ids.clone();
+        this.valores = outro.valores.clone();
+        this.tamanho = outro.tamanho;
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    /**
+     * @return Id do i-ésimo item, por ordem crescente de id.
+     */
+    int idEm(int i) {
+        return ids[i];
+    }
+
+    /**
+     * @return O i-ésimo item, por ordem crescente de id.
+     */
+    @SuppressWarnings("unchecked")
+    V valorEm(int i) {
+        return (V) valores[i];
+    }
+
+    V get(int id) {
+        int i = posicao(id);
+        return i >= 0 ? valorEm(i) : null;
+    }
+
+    boolean contem(int id) {
+        return posicao(id) >= 0;
+    }
+
+    /**
+     * @return O item que existia com este id, ou null.
+     */
+    V put(int id, V valor) {
+        int i = posicao(id);
+        if (i >= 0) {
+            V antigo = valorEm(i);
+            valores[i] = valor;
+            return antigo;
+        }
+
+        i = -(i + 1);
+        if (tamanho == ids.length) {
+            int capacidade = Math.max(CAPACIDADE_INICIAL, tamanho + (tamanho >> 1));
+            ids = Arrays.copyOf(ids, capacidade);
+            valores = Arrays.copyOf(valores, capacidade);
+        }
+        if (i < tamanho) {
+            System.arraycopy(ids, i, ids, i + 1, tamanho - i);
+            System.arraycopy(valores, i, valores, i + 1, tamanho - i);
+        }
+        ids[i] = id;
+        valores[i] = valor;
+        tamanho++;
+        return null;
+    }
+
+    /**
+     * @return O item removido, ou null se não existia.
+     */
+    V remove(int id) {
+        int i = posicao(id);
+        if (i < 0) return null;
+        V antigo = valorEm(i);
+        removerEm(i);
+        return antigo;
+    }
+
+    private void removerEm(int i) {
+        System.arraycopy(ids, i + 1, ids, i, tamanho - i - 1);
+        System.arraycopy(valores, i + 1, valores, i, tamanho - i - 1);
+        valores[--tamanho] = null;
+    }
+
+    /**
+     * @return Posição do id, ou -(ponto de inserção) - 1 se não existir.
+     */
+    private int posicao(int id) {
+        // Atalho para o caso habitual: o id maior é o último adicionado
+        if (tamanho == 0 || id > ids[tamanho - 1]) return -(tamanho + 1);
+        return Arrays.binarySearch(ids, 0, tamanho, id);
+    }
+
+    // ==========================================
+    // MAP (com boxing, para quem usa a interface genérica)
+    // ==========================================
+
+    @Override
+    public V get(Object chave) {
+        return chave instanceof Integer id ? get(id.intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object chave) {
+        return chave instanceof Integer id && contem(id);
+    }
+
+    @Override
+    public V put(Integer chave, V valor) {
+        return put(chave.intValue(), valor);
+    }
+
+    @Override
+    public V remove(Object chave) {
+        return chave instanceof Integer id ? remove(id.intValue()) : null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(valores, 0, tamanho, null);
+        tamanho = 0;
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Cursor<>() {
+                    @Override
+                    V atual(int i) {
+                        return valorEm(i);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return tamanho;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Integer, V>> iterator() {
+                return new Cursor<>() {
+                    @Override
+                    Entry<Integer, V> atual(int i) {
+                        return new SimpleImmutableEntry<>(idEm(i), valorEm(i));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return tamanho;
+            }
+        };
+    }
+
+    /**
+     * Iterador por posição; remover através dele mantém o mapa coerente.
+     */
+    private abstract class Cursor<T> implements Iterator<T> {
+        private int proximo;
+        private int ultimo = -1;
+
+        abstract T atual(int i);
+
+        @Override
+        public boolean hasNext() {
+            return proximo < tamanho;
+        }
+
+        @Override
+        public T next() {
+            if (proximo >= tamanho) throw new NoSuchElementException();
+            ultimo = proximo++;
+            return atual(ultimo);
+        }
+
+        @Override
+        public void remove() {
+            if (ultimo < 0) throw new IllegalStateException();
+            removerEm(ultimo);
+            proximo = ultimo;
+            ultimo = -1;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package model;
+
+/**
+ * Mapa imutável de {@code int} para valor, numa árvore de 32 ramos (5 bits da chave por nível).
+ * Cada nó só guarda os ramos que existem, com um mapa de bits a dizer quais são.
+ *
+ * Alterar não mexe no mapa: devolve um mapa novo que só copia os nós do caminho até à chave
+ * (no máximo 7) e partilha todos os outros com o antigo. Por isso guardar uma versão é O(1),
+ * e uma versão antiga pode ser lida noutra thread enquanto se criam versões novas.
+ *
+ * @param <V> Tipo dos valores (não pode ser null).
+ */
+final class MapaPersistente<V> {
+
+    private static final int BITS = 5;
+    private static final int MASCARA = (1 << BITS) - 1;
+    private static final int TOPO = 30; // Deslocamento do primeiro nível: 7 níveis cobrem os 32 bits
+
+    private static final MapaPersistente<?> VAZIO = new MapaPersistente<>(null, 0);
+
+    private final No raiz;
+    private final int tamanho;
+
+    private MapaPersistente(No raiz, int tamanho) {
+        this.raiz = raiz;
+        this.tamanho = tamanho;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> MapaPersistente<V> vazio() {
+        return (MapaPersistente<V>) VAZIO;
+    }
+
+    int size() {
+        return tamanho;
+    }
+
+    /**
+     * @return O valor da chave, ou null.
+     */
+    @SuppressWarnings("unchecked")
+    V get(int chave) {
+        No n = raiz;
+        for (int desloc = TOPO; n != null; desloc -= BITS) {
+            int bit = 1 << ((chave >>> desloc) & MASCARA);
+            if ((n.ramos & bit) == 0) return null;
+            Object filho = n.filhos[Integer.bitCount(n.ramos & (bit - 1))];
+            if (desloc == 0) return (V) filho;
+            n = (No) filho;
+        }
+        return null;
+    }
+
+    /**
+     * @return Mapa com a chave a apontar para o valor (este fica igual).
+     */
+    MapaPersistente<V> com(int chave, V valor) {
+        boolean nova = get(chave) == null;
+        return new MapaPersistente<>(com(raiz, TOPO, chave, valor), nova ? tamanho + 1 : tamanho);
+    }
+
+    /**
+     * @return Mapa sem a chave (este fica igual), ou este mesmo se a chave não existir.
+     */
+    MapaPersistente<V> sem(int chave) {
+        if (get(chave) == null) return this;
+        return new MapaPersistente<>(sem(raiz, TOPO, chave), tamanho - 1);
+    }
+
+    private static No com(No n, int desloc, int chave, Object valor) {
+        int bit = 1 << ((chave >>> desloc) & MASCARA);
+        int ramos = n != null ? n.ramos : 0;
+        Object[] filhos = n != null ? n.filhos : new Object[0];
+        int i = Integer.bitCount(ramos & (bit - 1));
+        boolean existe = (ramos & bit) != 0;
+
+        Object filho = desloc == 0 ? valor : com(existe ? (No) filhos[i] : null, desloc - BITS, chave, valor);
+        if (existe) {
+            Object[] copia = filhos.clone();
+            copia[i] = filho;
+            return new No(ramos, copia);
+        }
+        Object[] copia = new Object[filhos.length + 1];
+        System.arraycopy(filhos, 0, copia, 0, i);
+        copia[i] = filho;
+        System.arraycopy(filhos, i, copia, i + 1, filhos.length - i);
+        return new No(ramos | bit, copia);
+    }
+
+    /**
+     * @return O nó sem a chave (que tem de existir), ou null se ficou vazio.
+     */
+    private static No sem(No n, int desloc, int chave) {
+        int bit = 1 << ((chave >>> desloc) & MASCARA);
+        int i = Integer.bitCount(n.ramos & (bit - 1));
+        if (desloc > 0) {
+            No filho = sem((No) n.filhos[i], desloc - BITS, chave);
+            if (filho != null) {
+                Object[] copia = n.filhos.clone();
+                copia[i] = filho;
+                return new No(n.ramos, copia);
+            }
+        }
+        if (n.filhos.length == 1) return null;
+        Object[] copia = new Object[n.filhos.length - 1];
+        System.arraycopy(n.filhos, 0, copia, 0, i);
+        System.arraycopy(n.filhos, i + 1, copia, i, copia.length - i);
+        return new No(n.ramos & ~bit, copia);
+    }
+
+    /**
+     * Nó da árvore: os filhos são nós, exceto no último nível, onde são os valores.
+     */
+    private static final class No {
+        final int ramos;
+        final Object[] filhos;
+
+        No(int ramos, Object[] filhos) {
+            this.ramos = ramos;
+            this.filhos = filhos;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package model;
+
+import java.time.YearMonth;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Mapa de registos por mês que só carrega cada mês da fonte quando o seu valor é pedido.
+ * Percorrer as chaves (ou contar meses) nunca obriga a carregar nada.
+ * Mantém também as somas acumuladas dos saldos, atualizadas pelos próprios registos,
+ * e os meses ordenados, para percorrer só um intervalo de meses (e por ordem).
+ * As despesas recorrentes também vivem aqui: cada registo vê as que estão ativas no seu mês.
+ *
+ * O conteúdo dos meses está num {@link MapaPersistente}, por isso um instantâneo é O(1):
+ * partilha tudo com este mapa, e cada alteração seguinte copia só o que muda
+ * (o caminho até ao mês na árvore e as colunas desse mês).
+ */
+class MapaRegistos extends AbstractMap<YearMonth, Registo> {
+
+    private final Map<YearMonth, Registo> carregados = new HashMap<>(); // Registos deste mapa, criados a pedido
+    private MapaPersistente<Registo.Estado> estados = MapaPersistente.vazio(); // Conteúdo dos meses em memória
+    private MapaPersistente<ResumoMes> porCarregar = MapaPersistente.vazio();
+    private SomasAcumuladas somas;
+    private TreeSet<YearMonth> meses;
+    private Map<Integer, DespesaRecorrente> recorrentes = new LinkedHashMap<>();
+    private long versaoRecorrentes; // Muda sempre que uma série muda, para os registos refazerem as vistas
+    private FonteRegistos fonte;
+
+    // Partilhados com um instantâneo: são copiados antes da primeira alteração
+    private boolean mesesPartilhados;
+    private boolean somasPartilhadas;
+    private boolean recorrentesPartilhadas;
+    private final Set<Integer> recorrentesProprias = new HashSet<>(); // Séries que já não são partilhadas
+    private Object dono = new Object(); // Os conteúdos com este dono só existem neste mapa
+
+    MapaRegistos() {
+        this(null, new HashMap<>(), List.of());
+    }
+
+    MapaRegistos(FonteRegistos fonte, Map<YearMonth, ResumoMes> porCarregar, Collection<DespesaRecorrente> recorrentes) {
+        this.fonte = fonte;
+        for (Map.Entry<YearMonth, ResumoMes> entry : porCarregar.entrySet()) {
+            this.porCarregar = this.porCarregar.com(SomasAcumuladas.ordinal(entry.getKey()), entry.getValue());
+        }
+        this.meses = new TreeSet<>(porCarregar.keySet());
+        this.somas = new SomasAcumuladas();
+        for (DespesaRecorrente t : recorrentes) {
+            this.recorrentes.put(t.getId(), t);
+            this.recorrentesProprias.add(t.getId());
+        }
+        for (Map.Entry<YearMonth, ResumoMes> entry : porCarregar.entrySet()) {
+            somas.definir(entry.getKey(), entry.getValue().saldo() - totalRecorrentesPagas(entry.getKey()));
+        }
+    }
+
+    /**
+     * Instantâneo: partilha tudo com o outro mapa; os registos são criados quando forem pedidos.
+     */
+    private MapaRegistos(MapaRegistos outro) {
+        this.fonte = outro.fonte;
+        this.estados = outro.estados;
+        this.porCarregar = outro.porCarregar;
+        this.meses = outro.meses;
+        this.somas = outro.somas;
+        this.recorrentes = outro.recorrentes;
+        this.versaoRecorrentes = outro.versaoRecorrentes;
+        this.mesesPartilhados = true;
+        this.somasPartilhadas = true;
+        this.recorrentesPartilhadas = true;
+    }
+
+    @Override
+    public Registo get(Object chave) {
+        if (!(chave instanceof YearMonth mes)) return null;
+        Registo r = getCarregado(mes);
+        return r != null ? r : carregar(mes);
+    }
+
+    private Registo carregar(YearMonth mes) {
+        int ordinal = SomasAcumuladas.ordinal(mes);
+        if (porCarregar.get(ordinal) == null) return null;
+        porCarregar = porCarregar.sem(ordinal);
+        Registo r = fonte.carregar(mes);
+        r.entrarEm(this);
+        carregados.put(mes, r);
+        estados = estados.com(ordinal, r.getEstado());
+        return r;
+    }
+
+    @Override
+    public boolean containsKey(Object chave) {
+        return chave instanceof YearMonth mes && meses.contains(mes);
+    }
+
+    @Override
+    public Registo put(YearMonth mes, Registo r) {
+        int ordinal = SomasAcumuladas.ordinal(mes);
+        porCarregar = porCarregar.sem(ordinal);
+        if (!meses.contains(mes)) mesesParaAlterar().add(mes);
+        Registo antigo = getCarregado(mes);
+        if (antigo != null) antigo.sairDoMapa();
+        r.entrarEm(this);
+        carregados.put(mes, r);
+        estados = estados.com(ordinal, r.getEstado());
+        definirSaldo(mes, r.getSaldo());
+        return antigo;
+    }
+
+    @Override
+    public Registo remove(Object chave) {
+        if (!(chave instanceof YearMonth mes)) return null;
+        int ordinal = SomasAcumuladas.ordinal(mes);
+        porCarregar = porCarregar.sem(ordinal);
+        if (meses.contains(mes)) mesesParaAlterar().remove(mes);
+        definirSaldo(mes, 0);
+        Registo antigo = getCarregado(mes);
+        carregados.remove(mes);
+        estados = estados.sem(ordinal);
+        if (antigo != null) antigo.sairDoMapa();
+        return antigo;
+    }
+
+    @Override
+    public int size() {
+        return meses.size();
+    }
+
+    @Override
+    public Set<Entry<YearMonth, Registo>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return MapaRegistos.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<YearMonth, Registo>> iterator() {
+                // Por ordem cronológica; a cópia deixa alterar o mapa durante a iteração
+                Iterator<YearMonth> it = new ArrayList<>(meses).iterator();
+
+                return new Iterator<>() {
+                    private YearMonth atual;
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<YearMonth, Registo> next() {
+                        atual = it.next();
+                        final YearMonth mes = atual;
+                        return new Entry<>() {
+                            @Override public YearMonth getKey() { return mes; }
+                            @Override public Registo getValue() { return get(mes); }
+                            @Override public Registo setValue(Registo r) { return put(mes, r); }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        MapaRegistos.this.remove(atual);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * O registo de um mês para ler uma só vez (ex: exportar). Se ainda não estiver em memória,
+     * é lido da fonte mas não fica carregado, por isso percorrer todos os meses não enche a memória.
+     * Um registo lido assim não pode ser alterado.
+     */
+    Registo lerSemCarregar(YearMonth mes) {
+        Registo r = getCarregado(mes);
+        if (r != null || porCarregar.get(SomasAcumuladas.ordinal(mes)) == null) return r;
+        Registo lido = fonte.carregar(mes);
+        lido.mapa = this; // Só para ver as despesas recorrentes do mês; o mapa não fica a conhecê-lo
+        return lido;
+    }
+
+    /**
+     * @return O registo se já estiver em memória, sem o carregar.
+     */
+    Registo getCarregado(YearMonth mes) {
+        Registo r = carregados.get(mes);
+        if (r != null) return r;
+        Registo.Estado estado = estados.get(SomasAcumuladas.ordinal(mes));
+        if (estado == null) return null;
+        r = new Registo(mes, estado, this);
+        carregados.put(mes, r);
+        return r;
+    }
+
+    /**
+     * @return true se ler o mês (ou saber que não existe) não altera este mapa nem o registo:
+     *         já foi carregado e vê as séries atuais.
+     */
+    boolean lidoSemAlterar(YearMonth mes) {
+        Registo r = carregados.get(mes);
+        if (r != null) return r.virtuaisEmDia();
+        int ordinal = SomasAcumuladas.ordinal(mes);
+        return estados.get(ordinal) == null && porCarregar.get(ordinal) == null;
+    }
+
+    /**
+     * Um registo deste mapa deixou de partilhar o conteúdo e passou a ter uma cópia.
+     */
+    void estadoSubstituido(YearMonth mes, Registo.Estado estado) {
+        estados = estados.com(SomasAcumuladas.ordinal(mes), estado);
+    }
+
+    Object getDono() {
+        return dono;
+    }
+
+    /**
+     * @return O resumo guardado de um mês ainda não carregado, ou null.
+     */
+    ResumoMes getResumoPorCarregar(YearMonth mes) {
+        return porCarregar.get(SomasAcumuladas.ordinal(mes));
+    }
+
+    /**
+     * Cópia para ler noutra thread (ex: gravar), em O(1). Os dois mapas partilham tudo;
+     * como nada do que é partilhado muda no lugar, as alterações seguintes deste mapa
+     * não aparecem no instantâneo.
+     */
+    MapaRegistos instantaneo() {
+        MapaRegistos copia = new MapaRegistos(this);
+        // O que era só deste mapa passa a ser também do instantâneo
+        dono = new Object();
+        mesesPartilhados = true;
+        somasPartilhadas = true;
+        recorrentesPartilhadas = true;
+        recorrentesProprias.clear();
+        return copia;
+    }
+
+    /**
+     * @return Vista ordenada (só de leitura) dos meses existentes.
+     */
+    NavigableSet<YearMonth> getMeses() {
+        return Collections.unmodifiableNavigableSet(meses);
+    }
+
+    SomasAcumuladas getSomas() {
+        return somas;
+    }
+
+    /**
+     * Põe o saldo do mês nas somas acumuladas.
+     */
+    void definirSaldo(YearMonth mes, long saldo) {
+        if (somasPartilhadas) {
+            somas = new SomasAcumuladas(somas);
+            somasPartilhadas = false;
+        }
+        somas.definir(mes, saldo);
+    }
+
+    private TreeSet<YearMonth> mesesParaAlterar() {
+        if (mesesPartilhados) {
+            meses = new TreeSet<>(meses);
+            mesesPartilhados = false;
+        }
+        return meses;
+    }
+
+    // ==========================================
+    // DESPESAS RECORRENTES
+    // ==========================================
+
+    Collection<DespesaRecorrente> getRecorrentes() {
+        return Collections.unmodifiableCollection(recorrentes.values());
+    }
+
+    DespesaRecorrente getRecorrente(int id) {
+        return recorrentes.get(id);
+    }
+
+    /**
+     * @return A série, já só deste mapa, pronta a alterar; ou null se não existir.
+     */
+    DespesaRecorrente recorrenteParaAlterar(int id) {
+        DespesaRecorrente t = recorrentes.get(id);
+        if (t == null) return null;
+        if (recorrentesProprias.add(id)) {
+            t = t.clone();
+            recorrentesParaAlterar().put(id, t);
+        }
+        return t;
+    }
+
+    private Map<Integer, DespesaRecorrente> recorrentesParaAlterar() {
+        if (recorrentesPartilhadas) {
+            recorrentes = new LinkedHashMap<>(recorrentes);
+            recorrentesPartilhadas = false;
+        }
+        return recorrentes;
+    }
+
+    long getVersaoRecorrentes() {
+        return versaoRecorrentes;
+    }
+
+    /**
+     * Avisa os registos de que as vistas das séries estão desatualizadas.
+     */
+    void recorrentesAlteradas() {
+        versaoRecorrentes++;
+    }
+
+    void adicionarRecorrente(DespesaRecorrente t) {
+        recorrentesParaAlterar().put(t.getId(), t);
+        recorrentesProprias.add(t.getId());
+        recorrentesAlteradas();
+        // Só mudam os saldos dos meses em que já está paga (ex: séries convertidas de dados antigos)
+        for (YearMonth mes : t.getPagos()) atualizarSaldo(mes);
+    }
+
+    /**
+     * Novo montante da série a partir de {@code mes}. Só os saldos dos meses já pagos mudam.
+     */
+    boolean alterarRecorrenteDesde(int id, YearMonth mes, long montante) {
+        DespesaRecorrente t = recorrenteParaAlterar(id);
+        if (t == null) return false;
+        t.alterarDesde(mes, montante);
+        recorrentesAlteradas();
+        for (YearMonth pago : t.getPagos().tailSet(mes, true)) atualizarSaldo(pago);
+        return true;
+    }
+
+    /**
+     * A série deixa de existir a partir de {@code mes}, inclusive.
+     */
+    boolean terminarRecorrente(int id, YearMonth mes) {
+        DespesaRecorrente t = recorrenteParaAlterar(id);
+        if (t == null) return false;
+        List<YearMonth> pagos = new ArrayList<>(t.getPagos().tailSet(mes, true));
+        if (!t.terminarAntesDe(mes)) {
+            recorrentes.remove(id);
+            recorrentesProprias.remove(id);
+        }
+        recorrentesAlteradas();
+        for (YearMonth pago : pagos) atualizarSaldo(pago);
+        return true;
+    }
+
+    /**
+     * @return Soma das despesas recorrentes pagas no mês.
+     */
+    long totalRecorrentesPagas(YearMonth mes) {
+        long total = 0;
+        for (DespesaRecorrente t : recorrentes.values()) {
+            if (t.isPagaEm(mes) && t.ativaEm(mes)) total += t.getMontanteEm(mes);
+        }
+        return total;
+    }
+
+    /**
+     * Volta a pôr o saldo do mês nas somas acumuladas (ex: depois de uma série mudar).
+     */
+    void atualizarSaldo(YearMonth mes) {
+        Registo r = getCarregado(mes);
+        if (r != null) {
+            definirSaldo(mes, r.getSaldo());
+            return;
+        }
+        ResumoMes resumo = getResumoPorCarregar(mes);
+        if (resumo != null) {
+            definirSaldo(mes, resumo.saldo() - totalRecorrentesPagas(mes));
+        }
+    }
+
+    FonteRegistos getFonte() {
+        return fonte;
+    }
+
+    void setFonte(FonteRegistos fonte) {
+        this.fonte = fonte;
+    }
+}
@@ -1,38 +1,342 @@
 package model;
 
-import java.io.Serializable;
 import java.time.YearMonth;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
 
-public class MoneyCount implements Serializable {
+public final class MoneyCount {
     
-    private Map<YearMonth, Registo> registos;
+    private MapaRegistos registos;
+    private int proximoId; // Sequência de ids partilhada por despesas e entradas
 
     public MoneyCount(Collection<Registo> registos){
-        this.registos = new HashMap<>();
+        this.registos = new MapaRegistos();
         for (Registo r : registos) {
             this.registos.put(r.getData(), r.clone());
         }
+        reconstruirProximoId();
     }
 
+    /**
+     * Cópia em O(1): os dois modelos partilham os meses até um deles os alterar.
+     */
     public MoneyCount(MoneyCount outro) {
-        this.registos = new HashMap<>();
-        for (Map.Entry<YearMonth, Registo> entry : outro.registos.entrySet()) {
-            this.registos.put(entry.getKey(), entry.getValue().clone());
-        }
+        this.registos = outro.registos.instantaneo();
+        this.proximoId = outro.proximoId;
     }
 
     public MoneyCount(){
-        this.registos = new HashMap<>();
+        this.registos = new MapaRegistos();
+    }
+
+    /**
+     * Modelo cujos meses só são lidos da fonte quando são usados.
+     *
+     * @param fonte Origem dos registos.
+     * @param indice Resumo de cada mês existente na fonte.
+     */
+    public MoneyCount(FonteRegistos fonte, Map<YearMonth, ResumoMes> indice) {
+        this(fonte, indice, List.of());
+    }
+
+    /**
+     * Modelo cujos meses só são lidos da fonte quando são usados.
+     *
+     * @param fonte Origem dos registos.
+     * @param indice Resumo de cada mês existente na fonte (sem as despesas recorrentes).
+     * @param recorrentes Despesas recorrentes do modelo.
+     */
+    public MoneyCount(FonteRegistos fonte, Map<YearMonth, ResumoMes> indice, Collection<DespesaRecorrente> recorrentes) {
+        this.registos = new MapaRegistos(fonte, indice, recorrentes);
+        reconstruirProximoId();
     }
 
+    /**
+     * Mapa de registos por mês. Os meses ainda não lidos são carregados no primeiro get().
+     */
     public Map<YearMonth, Registo> getRegistos() {
         return this.registos;
     }
 
     public void adicionarRegisto(Registo r){
-        this.registos.putIfAbsent(r.getData(), r.clone());
+        if (this.registos.putIfAbsent(r.getData(), r.clone()) == null) {
+            avancarProximoId(ResumoMes.de(r).idMaximo() + 1);
+        }
+    }
+
+    /**
+     * Devolve um id novo para uma despesa ou entrada. Os ids nunca são reutilizados.
+     */
+    public int gerarId() {
+        return proximoId++;
+    }
+
+    /**
+     * Reserva um bloco de ids seguidos (ex: uma despesa fixa copiada para vários meses).
+     *
+     * @param quantidade Número de ids a reservar.
+     * @return O primeiro id do bloco; os seguintes são primeiro + 1 ... primeiro + quantidade - 1.
+     */
+    public int reservarIds(int quantidade) {
+        int primeiro = proximoId;
+        proximoId += quantidade;
+        return primeiro;
+    }
+
+    /**
+     * @return O id que vai ser dado a seguir (é o que fica gravado no ficheiro).
+     */
+    public int getProximoId() {
+        return proximoId;
+    }
+
+    /**
+     * Garante que a sequência nunca devolve ids abaixo de {@code minimo}
+     * (ex: ao ler o ficheiro ou ao reproduzir adições do journal).
+     */
+    public void avancarProximoId(int minimo) {
+        if (minimo > proximoId) proximoId = minimo;
+    }
+
+    /**
+     * Recalcula a sequência a partir do maior id existente. Só é preciso para dados
+     * que não a trazem gravada (ficheiros antigos); usa os resumos, sem carregar meses.
+     */
+    public void reconstruirProximoId() {
+        for (YearMonth mes : registos.keySet()) {
+            avancarProximoId(getResumoRegistado(mes).idMaximo() + 1);
+        }
+        for (DespesaRecorrente t : registos.getRecorrentes()) {
+            avancarProximoId(t.getId() + 1);
+        }
+    }
+
+    /**
+     * Resumo de um mês sem obrigar a carregá-lo, já com as despesas recorrentes pagas.
+     *
+     * @return O resumo, ou null se o mês não existir.
+     */
+    public ResumoMes getResumo(YearMonth mes) {
+        Registo r = registos.getCarregado(mes);
+        if (r != null) {
+            return new ResumoMes(r.getRendimento(), r.getTotalEntradas(), r.getTotalDespesas(), r.getIdMaximo());
+        }
+        ResumoMes resumo = registos.getResumoPorCarregar(mes);
+        return resumo != null ? resumo.comRecorrentesPagas(registos.totalRecorrentesPagas(mes)) : null;
+    }
+
+    /**
+     * Resumo só do que está guardado no mês, sem as despesas recorrentes (é o que vai para o ficheiro).
+     *
+     * @return O resumo, ou null se o mês não existir.
+     */
+    public ResumoMes getResumoRegistado(YearMonth mes) {
+        ResumoMes resumo = registos.getResumoPorCarregar(mes);
+        if (resumo != null) return resumo;
+        Registo r = registos.getCarregado(mes);
+        return r != null ? ResumoMes.de(r) : null;
+    }
+
+    // ==========================================
+    // DESPESAS RECORRENTES
+    // ==========================================
+
+    /**
+     * @return As despesas recorrentes (só de leitura; as alterações passam pelo modelo).
+     */
+    public Collection<DespesaRecorrente> getRecorrentes() {
+        return registos.getRecorrentes();
+    }
+
+    /**
+     * @return A série com este id, ou null.
+     */
+    public DespesaRecorrente getRecorrente(int id) {
+        return registos.getRecorrente(id);
+    }
+
+    public void adicionarRecorrente(DespesaRecorrente t) {
+        if (registos.getRecorrente(t.getId()) != null) return;
+        registos.adicionarRecorrente(t.clone());
+        avancarProximoId(t.getId() + 1);
+    }
+
+    /**
+     * Muda o montante da série a partir de {@code mes}, inclusive (incluindo os meses ajustados à mão).
+     *
+     * @return false se a série não existir.
+     */
+    public boolean alterarRecorrenteDesde(int id, YearMonth mes, long montante) {
+        return registos.alterarRecorrenteDesde(id, mes, montante);
+    }
+
+    /**
+     * Termina a série: deixa de aparecer em {@code mes} e nos meses seguintes.
+     *
+     * @return false se a série não existir.
+     */
+    public boolean terminarRecorrente(int id, YearMonth mes) {
+        return registos.terminarRecorrente(id, mes);
+    }
+
+    /**
+     * Converte as cópias de despesas fixas feitas mês a mês (dados antigos) em despesas recorrentes:
+     * uma série por nome, desde o primeiro mês em que aparece até ao último. Os meses do meio
+     * onde a cópia foi apagada ficam removidos da série, e cada mudança de montante abre um escalão.
+     * Se o mesmo nome aparece várias vezes no mesmo mês, a segunda cópia vai para uma segunda série, etc.
+     * Obriga a carregar todos os meses, por isso só é feito uma vez, ao ler dados antigos.
+     */
+    public void converterDespesasFixas() {
+        // Chave: nº da cópia com esse nome dentro do mês (por ordem de id) nos 32 bits de cima, código do nome nos de baixo
+        Map<Long, TreeMap<YearMonth, DespesaFixa>> porSerie = new LinkedHashMap<>();
+        for (YearMonth mes : registos.getMeses()) {
+            Registo r = registos.get(mes);
+            // As despesas do registo já estão por ordem de id
+            Map<Integer, Integer> repetidos = new HashMap<>();
+            for (Despesa d : r.getDespesasRegistadas().values()) {
+                if (d instanceof DespesaFixa df) {
+                    int n = repetidos.merge(df.getCodigoNome(), 1, Integer::sum);
+                    long chave = ((long) n << 32) | df.getCodigoNome();
+                    porSerie.computeIfAbsent(chave, k -> new TreeMap<>()).put(mes, df);
+                }
+            }
+        }
+        if (porSerie.isEmpty()) return;
+
+        YearMonth ultimoMes = registos.getMeses().last();
+        for (Map.Entry<Long, TreeMap<YearMonth, DespesaFixa>> entry : porSerie.entrySet()) {
+            TreeMap<YearMonth, DespesaFixa> copias = entry.getValue();
+            YearMonth inicio = copias.firstKey();
+            YearMonth fim = copias.lastKey();
+
+            Map<YearMonth, Long> montantes = new HashMap<>();
+            Set<YearMonth> pagos = new HashSet<>();
+            Set<YearMonth> removidos = new HashSet<>();
+            Long atual = null;
+            for (YearMonth mes : registos.getMeses().subSet(inicio, true, fim, true)) {
+                DespesaFixa df = copias.get(mes);
+                if (df == null) {
+                    removidos.add(mes);
+                    continue;
+                }
+                if (atual == null || df.getMontante() != atual) {
+                    atual = df.getMontante();
+                    montantes.put(mes, atual);
+                }
+                if (df.isPago()) pagos.add(mes);
+                registos.get(mes).removerDespesa(df.getIdDespesa());
+            }
+
+            // Se ainda aparece no último mês, continua a aparecer nos meses que forem criados
+            YearMonth fimSerie = fim.equals(ultimoMes) ? null : fim;
+            registos.adicionarRecorrente(new DespesaRecorrente(gerarId(), copias.get(inicio).getNome(), inicio, fimSerie,
+                    montantes, Map.of(), pagos, removidos));
+        }
+    }
+
+    /**
+     * @return O registo se já estiver em memória, ou null se ainda estiver só na fonte.
+     */
+    public Registo getRegistoCarregado(YearMonth mes) {
+        return registos.getCarregado(mes);
+    }
+
+    /**
+     * Ler um mês pode carregá-lo ou refazer as vistas das séries, o que altera o modelo.
+     *
+     * @return true se ler o mês agora não altera nada, e por isso pode ser feito por várias threads ao mesmo tempo.
+     */
+    public boolean lidoSemAlterar(YearMonth mes) {
+        return registos.lidoSemAlterar(mes);
+    }
+
+    /**
+     * O registo de um mês só para leitura, sem o deixar carregado (ex: exportar o histórico todo).
+     *
+     * @return O registo, ou null se o mês não existir. Não pode ser alterado.
+     */
+    public Registo lerRegisto(YearMonth mes) {
+        return registos.lerSemCarregar(mes);
+    }
+
+    /**
+     * Instantâneo consistente do modelo, para gravar fora da thread que o altera.
+     * É O(1): nada é copiado agora, e cada alteração seguinte ao modelo só copia o mês que muda.
+     */
+    public MoneyCount instantaneo() {
+        return new MoneyCount(this);
+    }
+
+    /**
+     * Meses a partir de {@code mes}, inclusive, por ordem cronológica.
+     *
+     * @return Vista só de leitura sobre os meses existentes.
+     */
+    public NavigableSet<YearMonth> mesesDesde(YearMonth mes) {
+        return registos.getMeses().tailSet(mes, true);
+    }
+
+    /**
+     * Meses de {@code de} até {@code ate}, ambos inclusive, por ordem cronológica.
+     *
+     * @return Vista só de leitura sobre os meses existentes.
+     */
+    public NavigableSet<YearMonth> mesesEntre(YearMonth de, YearMonth ate) {
+        if (ate.isBefore(de)) return Collections.emptyNavigableSet();
+        return registos.getMeses().subSet(de, true, ate, true);
+    }
+
+    /**
+     * @return O mês existente imediatamente antes de {@code mes}, ou null.
+     */
+    public YearMonth mesAnterior(YearMonth mes) {
+        return registos.getMeses().lower(mes);
+    }
+
+    /**
+     * @return O mês existente imediatamente depois de {@code mes}, ou null.
+     */
+    public YearMonth mesSeguinte(YearMonth mes) {
+        return registos.getMeses().higher(mes);
+    }
+
+    /**
+     * Poupança acumulada (soma dos saldos, em cêntimos) de todos os meses até {@code mes}, inclusive. O(log n).
+     */
+    public long getPoupancaAte(YearMonth mes) {
+        return registos.getSomas().somaAte(mes);
+    }
+
+    /**
+     * Poupança acumulada de {@code de} até {@code ate}, ambos inclusive. O(log n).
+     */
+    public long getPoupancaEntre(YearMonth de, YearMonth ate) {
+        return registos.getSomas().somaEntre(de, ate);
+    }
+
+    /**
+     * Poupança acumulada de todos os meses.
+     */
+    public long getPoupancaTotal() {
+        return registos.getSomas().total();
+    }
+
+    public FonteRegistos getFonte() {
+        return registos.getFonte();
+    }
+
+    /**
+     * Troca a fonte dos meses por carregar (ex: depois de o ficheiro ter sido regravado).
+     */
+    public void setFonte(FonteRegistos fonte) {
+        registos.setFonte(fonte);
     }
-}
\ No newline at end of file
+}
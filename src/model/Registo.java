@@ -1,43 +1,97 @@
 package model;
 
-import java.io.Serializable;
 import java.time.YearMonth;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
-public class Registo implements Serializable {
+/**
+ * Registo de um mês. Todos os montantes são em cêntimos (ver {@link Dinheiro}).
+ */
+public class Registo {
     
-    private YearMonth data;
-    private double rendimento;
-    private double saldo;
-    private double poupanca;
-    private Map<Integer, Despesa> despesas;
-    private Map<Integer, Entrada> entradas;
+    private final YearMonth data;
+    private Estado estado;
+
+    // Mapa do modelo a que o registo pertence: recebe o saldo do mês quando muda
+    // e tem as despesas recorrentes que aparecem neste mês
+    MapaRegistos mapa;
+
+    // Despesas recorrentes vistas neste mês, refeitas quando as séries mudam
+    private MapaIds<DespesaFixa> virtuais = new MapaIds<>();
+    private MapaRegistos mapaVirtuais;
+    private long versaoVirtuais;
+    private long virtuaisPagas;
+    private long virtuaisPorPagar;
+
+    /**
+     * Conteúdo do mês. Pode ser partilhado por vários registos (cópias e instantâneos do modelo):
+     * só é alterado no lugar por quem for o seu {@code dono}; os outros copiam-no primeiro.
+     * Os itens lá dentro nunca mudam: editar um item troca-o por uma cópia.
+     */
+    static final class Estado {
+        long rendimento;
+        final MapaIds<Despesa> despesas;
+        final MapaIds<Entrada> entradas;
+
+        // Totais mantidos a cada alteração, para as leituras não percorrerem os itens
+        long totalEntradas;
+        long totalDespesasNormais;
+        long totalFixasPagas;
+        long totalFixasPorPagar;
+        int idMaximo = -1; // Maior id que já foi adicionado ao mês
+
+        Object dono; // null quando está partilhado
+
+        Estado(long rendimento, Object dono) {
+            this.rendimento = rendimento;
+            this.despesas = new MapaIds<>();
+            this.entradas = new MapaIds<>();
+            this.dono = dono;
+        }
+
+        /**
+         * Cópia das colunas e dos totais, que passa a ser só de {@code dono}.
+         * Custa O(itens do mês), mas só acontece na primeira alteração a cada mês depois de um
+         * instantâneo (no máximo uma por gravação automática), e é uma cópia de dois arrays.
+         * As colunas planas e ordenadas por id são o que as somas e as listagens percorrem.
+         */
+        Estado(Estado outro, Object dono) {
+            this.rendimento = outro.rendimento;
+            this.despesas = new MapaIds<>(outro.despesas);
+            this.entradas = new MapaIds<>(outro.entradas);
+            this.totalEntradas = outro.totalEntradas;
+            this.totalDespesasNormais = outro.totalDespesasNormais;
+            this.totalFixasPagas = outro.totalFixasPagas;
+            this.totalFixasPorPagar = outro.totalFixasPorPagar;
+            this.idMaximo = outro.idMaximo;
+            this.dono = dono;
+        }
+    }
     
-    public Registo(YearMonth data, double rendimento) {
+    public Registo(YearMonth data, long rendimento) {
         this.data = data;
-        this.rendimento = rendimento;
-        this.saldo = this.rendimento;
-        this.poupanca = this.rendimento;
-        this.despesas = new HashMap<>();
-        this.entradas = new HashMap<>();
+        this.estado = new Estado(rendimento, this);
     }
 
+    /**
+     * Cópia em O(1): as duas partilham o conteúdo e a primeira que for alterada copia-o.
+     */
     public Registo(Registo outro) {
         this.data = outro.data;
-        this.rendimento = outro.rendimento;
-        this.saldo = outro.saldo;
-        this.poupanca = outro.poupanca;
-        this.despesas = new HashMap<>();
-        this.entradas = new HashMap<>();
-
-        for (Map.Entry<Integer, Despesa> entry : outro.despesas.entrySet()) {
-            this.despesas.put(entry.getKey(), entry.getValue().clone());
-        }
+        this.estado = outro.estado;
+        this.estado.dono = null;
+    }
 
-        for (Map.Entry<Integer, Entrada> entry : outro.entradas.entrySet()) {
-            this.entradas.put(entry.getKey(), entry.getValue().clone());
-        }
+    /**
+     * Registo de um mapa sobre um conteúdo que já existe (ex: num instantâneo do modelo).
+     */
+    Registo(YearMonth data, Estado estado, MapaRegistos mapa) {
+        this.data = data;
+        this.estado = estado;
+        this.mapa = mapa;
     }
 
     @Override
@@ -49,53 +103,377 @@ public class Registo implements Serializable {
         return this.data;
     }
 
+    Estado getEstado() {
+        return this.estado;
+    }
+
+    /**
+     * Todas as despesas do mês, incluindo as das despesas recorrentes.
+     *
+     * @return Vista só de leitura; as alterações passam pelos métodos do registo para manter os totais.
+     */
     public Map<Integer,Despesa> getDespesas() {
-        return this.despesas;
+        MapaIds<DespesaFixa> v = virtuais();
+        if (v.isEmpty()) return Collections.unmodifiableMap(this.estado.despesas);
+
+        MapaIds<Despesa> todas = new MapaIds<>(this.estado.despesas.size() + v.size());
+        for (Despesa d : listarDespesas()) todas.put(d.getIdDespesa(), d);
+        return Collections.unmodifiableMap(todas);
+    }
+
+    /**
+     * Todas as despesas do mês (incluindo as recorrentes) numa lista por ordem de id,
+     * juntando as duas colunas já ordenadas sem criar mapas pelo caminho.
+     */
+    public List<Despesa> listarDespesas() {
+        MapaIds<DespesaFixa> v = virtuais();
+        MapaIds<Despesa> despesas = this.estado.despesas;
+        List<Despesa> lista = new ArrayList<>(despesas.size() + v.size());
+        int i = 0, j = 0;
+        while (i < despesas.size() || j < v.size()) {
+            if (j == v.size() || (i < despesas.size() && despesas.idEm(i) < v.idEm(j))) {
+                lista.add(despesas.valorEm(i++));
+            } else {
+                lista.add(v.valorEm(j++));
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * @return A despesa com este id (registada ou recorrente), ou null.
+     */
+    public Despesa getDespesa(int idDespesa) {
+        Despesa d = this.estado.despesas.get(idDespesa);
+        return d != null ? d : virtuais().get(idDespesa);
     }
 
+    /**
+     * Só as despesas guardadas neste mês, sem as que vêm de despesas recorrentes.
+     *
+     * @return Vista só de leitura.
+     */
+    public Map<Integer, Despesa> getDespesasRegistadas() {
+        return Collections.unmodifiableMap(this.estado.despesas);
+    }
+
+    /**
+     * @return Vista só de leitura; as alterações passam pelos métodos do registo para manter os totais.
+     */
     public Map<Integer, Entrada> getEntradas() {
-        return this.entradas;
+        return Collections.unmodifiableMap(this.estado.entradas);
     }
 
     // Devolve estritamente o valor do salário/base, sem somar as entradas
-    public double getRendimento() {
-        return this.rendimento; 
+    public long getRendimento() {
+        return this.estado.rendimento; 
     }
 
     // NOVO: Soma das entradas para ser calculada no Saldo Disponível
-    public double getTotalEntradas() {
-        double total = 0;
-        for (Entrada e : entradas.values()) {
-            total += e.getMontante();
+    public long getTotalEntradas() {
+        return this.estado.totalEntradas;
+    }
+
+    /**
+     * @return Saldo real do mês: rendimento base + entradas - despesas
+     */
+    public long getSaldo() {
+        return this.estado.rendimento + this.estado.totalEntradas - getTotalDespesas();
+    }
+
+    // Despesas normais + fixas já pagas (as fixas por pagar ainda não saíram do saldo)
+    public long getTotalDespesas() {
+        virtuais();
+        return this.estado.totalDespesasNormais + this.estado.totalFixasPagas + this.virtuaisPagas;
+    }
+
+    public long getTotalDespesasNormais() {
+        return this.estado.totalDespesasNormais;
+    }
+
+    public long getTotalFixasPagas() {
+        virtuais();
+        return this.estado.totalFixasPagas + this.virtuaisPagas;
+    }
+
+    public long getTotalFixasPorPagar() {
+        virtuais();
+        return this.estado.totalFixasPorPagar + this.virtuaisPorPagar;
+    }
+
+    /**
+     * Despesas registadas (sem as recorrentes): só é guardado no ficheiro o que está aqui.
+     */
+    long getTotalDespesasRegistadas() {
+        return this.estado.totalDespesasNormais + this.estado.totalFixasPagas;
+    }
+
+    int getIdMaximo() {
+        return this.estado.idMaximo;
+    }
+
+    public void adicionarDespesa(Despesa d) {
+        Estado e = paraAlterar();
+        Despesa c = d.clone();
+        Despesa antiga = e.despesas.put(c.getIdDespesa(), c);
+        if (antiga != null) contarDespesa(e, antiga, -1);
+        contarDespesa(e, c, 1);
+        e.idMaximo = Math.max(e.idMaximo, c.getIdDespesa());
+        saldoAlterado();
+    }
+
+    public void adicionarEntrada(Entrada en) {
+        Estado e = paraAlterar();
+        Entrada c = en.clone();
+        Entrada antiga = e.entradas.put(c.getIdEntrada(), c);
+        if (antiga != null) e.totalEntradas -= antiga.getMontante();
+        e.totalEntradas += c.getMontante();
+        e.idMaximo = Math.max(e.idMaximo, c.getIdEntrada());
+        saldoAlterado();
+    }
+
+    /**
+     * Adiciona muitos itens de uma vez (ex: ao ler um mês do ficheiro). Os montantes de cada
+     * tipo vão para uma coluna {@code long[]} somada de uma só vez, e o saldo só é
+     * atualizado no fim, em vez de a cada item.
+     */
+    public void adicionarTodas(Collection<? extends Despesa> novasDespesas, Collection<? extends Entrada> novasEntradas) {
+        Estado e = paraAlterar();
+        long[] normais = new long[novasDespesas.size()];
+        long[] pagas = new long[novasDespesas.size()];
+        long[] porPagar = new long[novasDespesas.size()];
+        long[] montantesEntradas = new long[novasEntradas.size()];
+        int nNormais = 0, nPagas = 0, nPorPagar = 0, nEntradas = 0;
+
+        for (Despesa d : novasDespesas) {
+            Despesa c = d.clone();
+            Despesa antiga = e.despesas.put(c.getIdDespesa(), c);
+            if (antiga != null) contarDespesa(e, antiga, -1);
+            if (!(c instanceof DespesaFixa df)) {
+                normais[nNormais++] = c.getMontante();
+            } else if (df.isPago()) {
+                pagas[nPagas++] = c.getMontante();
+            } else {
+                porPagar[nPorPagar++] = c.getMontante();
+            }
+            e.idMaximo = Math.max(e.idMaximo, c.getIdDespesa());
         }
-        return total;
+        for (Entrada en : novasEntradas) {
+            Entrada c = en.clone();
+            Entrada antiga = e.entradas.put(c.getIdEntrada(), c);
+            if (antiga != null) e.totalEntradas -= antiga.getMontante();
+            montantesEntradas[nEntradas++] = c.getMontante();
+            e.idMaximo = Math.max(e.idMaximo, c.getIdEntrada());
+        }
+
+        e.totalDespesasNormais += Dinheiro.somar(normais, 0, nNormais);
+        e.totalFixasPagas += Dinheiro.somar(pagas, 0, nPagas);
+        e.totalFixasPorPagar += Dinheiro.somar(porPagar, 0, nPorPagar);
+        e.totalEntradas += Dinheiro.somar(montantesEntradas, 0, nEntradas);
+        saldoAlterado();
     }
 
-    public double getTotalDespesas() {
-        double total = 0;
-        for (Despesa d : despesas.values()) {
-            if (d instanceof DespesaFixa df) {
-                if (df.isPago()) {
-                    total += df.getMontante();
-                }
+    /**
+     * Remove a despesa deste mês. Se vier de uma despesa recorrente, só deixa de aparecer neste mês.
+     *
+     * @return A despesa removida, ou null se não existir.
+     */
+    public Despesa removerDespesa(int idDespesa) {
+        if (this.estado.despesas.contem(idDespesa)) {
+            Estado e = paraAlterar();
+            Despesa d = e.despesas.remove(idDespesa);
+            contarDespesa(e, d, -1);
+            saldoAlterado();
+            return d;
+        }
+
+        DespesaFixa v = virtuais().get(idDespesa);
+        if (v != null) {
+            this.mapa.recorrenteParaAlterar(idDespesa).removerEm(this.data);
+            recorrenteAlterada();
+        }
+        return v;
+    }
+
+    /**
+     * Altera o montante só neste mês (também nas despesas recorrentes).
+     *
+     * @return true se a despesa existe.
+     */
+    public boolean editarDespesa(int idDespesa, long montante) {
+        Despesa d = this.estado.despesas.get(idDespesa);
+        if (d != null) {
+            Despesa c = d.clone();
+            c.setMontante(montante);
+            substituirDespesa(d, c);
+            return true;
+        }
+
+        if (!virtuais().contem(idDespesa)) return false;
+        this.mapa.recorrenteParaAlterar(idDespesa).ajustar(this.data, montante);
+        recorrenteAlterada();
+        return true;
+    }
+
+    /**
+     * @return true se a despesa existe e é fixa.
+     */
+    public boolean marcarPaga(int idDespesa, boolean paga) {
+        if (this.estado.despesas.get(idDespesa) instanceof DespesaFixa df) {
+            DespesaFixa c = df.clone();
+            c.setPago(paga);
+            substituirDespesa(df, c);
+            return true;
+        }
+
+        if (!virtuais().contem(idDespesa)) return false;
+        this.mapa.recorrenteParaAlterar(idDespesa).marcarPaga(this.data, paga);
+        recorrenteAlterada();
+        return true;
+    }
+
+    /**
+     * @return A entrada removida, ou null se não existir.
+     */
+    public Entrada removerEntrada(int idEntrada) {
+        if (!this.estado.entradas.contem(idEntrada)) return null;
+        Estado e = paraAlterar();
+        Entrada en = e.entradas.remove(idEntrada);
+        e.totalEntradas -= en.getMontante();
+        saldoAlterado();
+        return en;
+    }
+
+    /**
+     * @return true se a entrada existe.
+     */
+    public boolean editarEntrada(int idEntrada, long montante) {
+        Entrada en = this.estado.entradas.get(idEntrada);
+        if (en == null) return false;
+        Entrada c = en.clone();
+        c.setMontante(montante);
+        Estado e = paraAlterar();
+        e.entradas.put(idEntrada, c);
+        e.totalEntradas += montante - en.getMontante();
+        saldoAlterado();
+        return true;
+    }
+
+    /**
+     * Troca uma despesa registada pela sua versão alterada (os itens não mudam no lugar,
+     * porque podem estar a ser vistos por um instantâneo).
+     */
+    private void substituirDespesa(Despesa antiga, Despesa nova) {
+        Estado e = paraAlterar();
+        contarDespesa(e, antiga, -1);
+        e.despesas.put(nova.getIdDespesa(), nova);
+        contarDespesa(e, nova, 1);
+        saldoAlterado();
+    }
+
+    /**
+     * Soma (sinal 1) ou retira (sinal -1) a despesa do total a que pertence.
+     */
+    private static void contarDespesa(Estado e, Despesa d, int sinal) {
+        long montante = sinal * d.getMontante();
+        if (d instanceof DespesaFixa df) {
+            if (df.isPago()) {
+                e.totalFixasPagas += montante;
             } else {
-                total += d.getMontante();
+                e.totalFixasPorPagar += montante;
             }
+        } else {
+            e.totalDespesasNormais += montante;
         }
-        return total;
     }
 
-    public void adicionarDespesa(Despesa d) {
-        Despesa c = d.clone();
-        this.despesas.put(c.getIdDespesa(), c);
+    public void setRendimento(long rendimento) {
+        paraAlterar().rendimento = rendimento;
+        saldoAlterado();
+    }
+
+    /**
+     * @return O conteúdo pronto a alterar no lugar. Se for partilhado (com uma cópia ou um
+     *         instantâneo), é copiado primeiro: só as colunas deste mês, e o mapa passa a ver a cópia.
+     */
+    private Estado paraAlterar() {
+        Object dono = dono();
+        if (this.estado.dono != dono) {
+            this.estado = new Estado(this.estado, dono);
+            if (this.mapa != null) this.mapa.estadoSubstituido(this.data, this.estado);
+        }
+        return this.estado;
+    }
+
+    /**
+     * Quem pode alterar o conteúdo no lugar: o mapa (até ao próximo instantâneo) ou o próprio registo.
+     */
+    private Object dono() {
+        return this.mapa != null ? this.mapa.getDono() : this;
+    }
+
+    /**
+     * Passa a pertencer ao mapa; se o conteúdo era só seu, passa a ser do mapa.
+     */
+    void entrarEm(MapaRegistos mapa) {
+        if (this.estado.dono == dono()) this.estado.dono = mapa.getDono();
+        this.mapa = mapa;
+    }
+
+    /**
+     * Deixa de pertencer ao mapa (ex: o mês foi apagado ou substituído).
+     */
+    void sairDoMapa() {
+        if (this.mapa != null && this.estado.dono == this.mapa.getDono()) this.estado.dono = this;
+        this.mapa = null;
+    }
+
+    private void saldoAlterado() {
+        if (this.mapa != null) this.mapa.definirSaldo(this.data, getSaldo());
     }
 
-    public void adicionarEntrada(Entrada e) {
-        Entrada c = e.clone();
-        this.entradas.put(c.getIdEntrada(), c);
+    /**
+     * Uma série foi alterada só neste mês: os outros meses não mudam, mas as vistas têm de ser refeitas.
+     */
+    private void recorrenteAlterada() {
+        this.mapa.recorrentesAlteradas();
+        saldoAlterado();
     }
 
-    public void setRendimento(double rendimento) {
-        this.rendimento = rendimento;
-    } 
+    /**
+     * @return true se as despesas recorrentes vistas neste mês estão em dia (lê-lo não refaz nada).
+     */
+    boolean virtuaisEmDia() {
+        return this.mapa == this.mapaVirtuais && (this.mapa == null || this.mapa.getVersaoRecorrentes() == this.versaoVirtuais);
+    }
+
+    /**
+     * @return As despesas recorrentes ativas neste mês, refeitas se alguma série mudou.
+     */
+    private MapaIds<DespesaFixa> virtuais() {
+        if (virtuaisEmDia()) {
+            return this.virtuais;
+        }
+
+        MapaIds<DespesaFixa> v = new MapaIds<>();
+        long pagas = 0, porPagar = 0;
+        if (this.mapa != null) {
+            for (DespesaRecorrente t : this.mapa.getRecorrentes()) {
+                if (!t.ativaEm(this.data)) continue;
+                DespesaFixa df = t.instanciaEm(this.data);
+                v.put(df.getIdDespesa(), df);
+                if (df.isPago()) {
+                    pagas += df.getMontante();
+                } else {
+                    porPagar += df.getMontante();
+                }
+            }
+            this.versaoVirtuais = this.mapa.getVersaoRecorrentes();
+        }
+        this.virtuais = v;
+        this.virtuaisPagas = pagas;
+        this.virtuaisPorPagar = porPagar;
+        this.mapaVirtuais = this.mapa;
+        return v;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package model;
+
+/**
+ * Resumo de um mês, suficiente para os agregados sem ter de carregar o registo completo.
+ * Montantes em cêntimos.
+ *
+ * @param rendimento Rendimento base do mês.
+ * @param totalEntradas Soma das entradas extra.
+ * @param totalDespesas Soma das despesas (as fixas só contam se estiverem pagas).
+ * @param idMaximo Maior id de despesa/entrada que já foi adicionada ao mês (-1 se nenhuma).
+ */
+public record ResumoMes(long rendimento, long totalEntradas, long totalDespesas, int idMaximo) {
+
+    /**
+     * Resumo do que está guardado no registo, sem as despesas recorrentes (é o que vai para o ficheiro).
+     */
+    public static ResumoMes de(Registo r) {
+        return new ResumoMes(r.getRendimento(), r.getTotalEntradas(), r.getTotalDespesasRegistadas(), r.getIdMaximo());
+    }
+
+    /**
+     * @return O mesmo resumo com as despesas recorrentes pagas nesse mês somadas às despesas.
+     */
+    public ResumoMes comRecorrentesPagas(long pagas) {
+        if (pagas == 0) return this;
+        return new ResumoMes(rendimento, totalEntradas, totalDespesas + pagas, idMaximo);
+    }
+
+    /**
+     * @return Saldo real do mês: rendimento base + entradas - despesas
+     */
+    public long saldo() {
+        return rendimento + totalEntradas - totalDespesas;
+    }
+}
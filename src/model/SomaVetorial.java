@@ -0,0 +1,30 @@
+package model;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Soma de {@code long[]} com a Vector API. Separada de {@link Dinheiro} para só ser
+ * carregada quando o módulo {@code jdk.incubator.vector} existe.
+ */
+final class SomaVetorial {
+
+    private static final VectorSpecies<Long> ESPECIE = LongVector.SPECIES_PREFERRED;
+
+    private SomaVetorial() {
+    }
+
+    static long somar(long[] valores, int de, int ate) {
+        LongVector acumulado = LongVector.zero(ESPECIE);
+        int i = de;
+        for (int limite = de + ESPECIE.loopBound(ate - de); i < limite; i += ESPECIE.length()) {
+            acumulado = acumulado.add(LongVector.fromArray(ESPECIE, valores, i));
+        }
+        long soma = acumulado.reduceLanes(VectorOperators.ADD);
+        for (; i < ate; i++) {
+            soma += valores[i];
+        }
+        return soma;
+    }
+}
@@ -0,0 +1,112 @@
+package model;
+
+import java.time.YearMonth;
+
+/**
+ * Árvore de Fenwick com o saldo de cada mês (em cêntimos), para somar intervalos de meses em O(log n).
+ * Como os saldos são inteiros, as somas não acumulam erros de arredondamento.
+ *
+ * Os meses são posições seguidas a partir de {@code base} (ano * 12 + mês - 1);
+ * quando aparece um mês fora do intervalo coberto, as tabelas crescem e a árvore é refeita.
+ */
+class SomasAcumuladas {
+
+    private static final int CAPACIDADE_INICIAL = 64;
+
+    private int base;
+    private long[] valores = new long[0]; // saldo de cada posição
+    private long[] arvore = new long[1];  // índices 1..n
+
+    SomasAcumuladas() {
+    }
+
+    SomasAcumuladas(SomasAcumuladas outra) {
+        this.base = outra.base;
+        this.valores = outra.valores.clone();
+        this.arvore = outra.arvore.clone();
+    }
+
+    /**
+     * Define o saldo de um mês (0 para um mês que deixou de existir).
+     */
+    void definir(YearMonth mes, long saldo) {
+        int ordinal = ordinal(mes);
+        if (valores.length == 0 || ordinal < base || ordinal >= base + valores.length) {
+            if (saldo == 0) return;
+            crescer(ordinal);
+        }
+        int i = ordinal - base;
+        long delta = saldo - valores[i];
+        if (delta == 0) return;
+        valores[i] = saldo;
+        for (int k = i + 1; k < arvore.length; k += k & -k) {
+            arvore[k] += delta;
+        }
+    }
+
+    /**
+     * @return Soma dos saldos de todos os meses até {@code mes}, inclusive.
+     */
+    long somaAte(YearMonth mes) {
+        return prefixo(ordinal(mes) - base + 1);
+    }
+
+    /**
+     * @return Soma dos saldos de {@code de} até {@code ate}, ambos inclusive.
+     */
+    long somaEntre(YearMonth de, YearMonth ate) {
+        if (ate.isBefore(de)) return 0;
+        return somaAte(ate) - somaAte(de.minusMonths(1));
+    }
+
+    long total() {
+        return prefixo(valores.length);
+    }
+
+    /**
+     * @return Soma das primeiras n posições.
+     */
+    private long prefixo(int n) {
+        long soma = 0;
+        for (int k = Math.min(n, valores.length); k > 0; k -= k & -k) {
+            soma += arvore[k];
+        }
+        return soma;
+    }
+
+    /**
+     * Alarga o intervalo coberto para incluir o ordinal, com folga do lado para onde cresceu.
+     */
+    private void crescer(int ordinal) {
+        int novaBase;
+        int capacidade;
+        if (valores.length == 0) {
+            capacidade = CAPACIDADE_INICIAL;
+            novaBase = ordinal - capacidade / 2;
+        } else {
+            int inicio = Math.min(base, ordinal);
+            int fim = Math.max(base + valores.length, ordinal + 1);
+            capacidade = Integer.highestOneBit(fim - inicio) << 1;
+            novaBase = ordinal < base ? fim - capacidade : inicio;
+        }
+
+        long[] novos = new long[capacidade];
+        if (valores.length > 0) {
+            System.arraycopy(valores, 0, novos, base - novaBase, valores.length);
+        }
+        base = novaBase;
+        valores = novos;
+
+        // Construção em O(n): cada nó passa a sua soma ao pai
+        arvore = new long[capacidade + 1];
+        for (int i = 1; i <= capacidade; i++) {
+            arvore[i] += valores[i - 1];
+            int pai = i + (i & -i);
+            if (pai <= capacidade) arvore[pai] += arvore[i];
+        }
+    }
+
+    static int ordinal(YearMonth mes) {
+        return mes.getYear() * 12 + mes.getMonthValue() - 1;
+    }
+}
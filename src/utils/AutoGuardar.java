@@ -0,0 +1,129 @@
+package utils;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import model.MoneyCount;
+
+/**
+ * Gravação automática do modelo numa virtual thread.
+ *
+ * Cada alteração marca o modelo como sujo. Uma rajada de alterações é juntada numa
+ * só gravação: grava-se quando passa {@code espera} sem alterações novas, ou no máximo
+ * {@code latenciaMaxima} depois da primeira alteração por gravar.
+ * A gravação compacta o journal: o journal é cortado e o instantâneo tirado de uma vez
+ * (ex: {@code MoneyCountController::iniciarCompactacao}, sob o lock do controlador), e o
+ * fsync do journal cortado e o ficheiro (temporário + rename) são escritos sem lock nenhum.
+ */
+public class AutoGuardar {
+
+    private final Journal journal;
+    private final Supplier<MoneyCount> instantaneo;
+    private final long espera;
+    private final long latenciaMaxima;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition alterado = lock.newCondition();
+    private final Thread thread;
+    private boolean ativo = true;
+    private boolean sujo;
+    private long primeiraAlteracao;
+    private long ultimaAlteracao;
+
+    /**
+     * @param journal Journal a compactar em cada gravação
+     * @param instantaneo Roda o journal e devolve o instantâneo do modelo nesse ponto (null se não rodou)
+     * @param espera Tempo sem alterações ao fim do qual se grava
+     * @param latenciaMaxima Tempo máximo entre a primeira alteração e a gravação
+     */
+    public AutoGuardar(Journal journal, Supplier<MoneyCount> instantaneo, Duration espera, Duration latenciaMaxima) {
+        this.journal = journal;
+        this.instantaneo = instantaneo;
+        this.espera = espera.toNanos();
+        this.latenciaMaxima = latenciaMaxima.toNanos();
+        this.thread = Thread.ofVirtual().name("autoguardar").start(this::ciclo);
+    }
+
+    /**
+     * Marca o modelo como alterado. Não bloqueia: só agenda a próxima gravação.
+     */
+    public void marcarSujo() {
+        lock.lock();
+        try {
+            long agora = System.nanoTime();
+            if (!sujo) {
+                sujo = true;
+                primeiraAlteracao = agora;
+            }
+            ultimaAlteracao = agora;
+            alterado.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Para o serviço, esperando que uma gravação em curso termine.
+     * Alterações ainda por gravar ficam no journal.
+     */
+    public void parar() {
+        lock.lock();
+        try {
+            ativo = false;
+            alterado.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ciclo() {
+        while (esperarPorGravacao()) {
+            guardar();
+        }
+    }
+
+    /**
+     * @return true quando é altura de gravar, false se o serviço foi parado
+     */
+    private boolean esperarPorGravacao() {
+        lock.lock();
+        try {
+            while (ativo) {
+                if (!sujo) {
+                    alterado.await();
+                    continue;
+                }
+                long prazo = Math.min(ultimaAlteracao + espera, primeiraAlteracao + latenciaMaxima);
+                long falta = prazo - System.nanoTime();
+                if (falta <= 0) {
+                    sujo = false;
+                    return true;
+                }
+                alterado.awaitNanos(falta);
+            }
+            return false;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void guardar() {
+        try {
+            MoneyCount m = instantaneo.get();
+            if (m != null) {
+                journal.concluirCompactacao(m);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Erro ao gravar automaticamente: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.zip.GZIPOutputStream;
+
+import model.Despesa;
+import model.DespesaFixa;
+import model.Entrada;
+import model.MoneyCount;
+import model.Registo;
+
+/**
+ * Exporta os registos para CSV ou JSON Lines, um mês de cada vez.
+ *
+ * Os meses que ainda estão só no ficheiro são lidos e largados logo a seguir (ver
+ * {@link MoneyCount#lerRegisto}), e as linhas vão para um buffer de tamanho fixo, por isso a memória
+ * usada não depende do tamanho do histórico. Cada mês tem uma linha "rendimento" e uma linha por
+ * despesa ou entrada; os montantes são escritos em euros com 2 casas decimais, sem arredondamentos.
+ */
+public final class ExportadorRegistos {
+
+    private static final int TAMANHO_BUFFER = 1 << 16;
+    private static final String CABECALHO_CSV = "mes,dia,tipo,id,nome,montante,paga,serie\n";
+
+    public enum Formato { CSV, JSONL }
+
+    private ExportadorRegistos() {
+    }
+
+    /**
+     * Exporta para um ficheiro (escrito num temporário e trocado no fim, como o snapshot).
+     * Com o programa aberto, deve receber um {@link MoneyCount#instantaneo()}.
+     *
+     * @param modelo Modelo a exportar
+     * @param destino Ficheiro de destino
+     * @param formato CSV ou JSON Lines
+     * @param de Primeiro mês a exportar (null = desde o início)
+     * @param ate Último mês a exportar (null = até ao fim)
+     * @param gzip true para comprimir com gzip
+     * @return Número de linhas de dados escritas
+     */
+    public static long exportar(MoneyCount modelo, Path destino, Formato formato, YearMonth de, YearMonth ate, boolean gzip) throws IOException {
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        long linhas;
+        if (gzip) {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temporario), TAMANHO_BUFFER);
+                 WritableByteChannel canal = Channels.newChannel(out)) {
+                linhas = exportar(modelo, canal, formato, de, ate);
+            }
+        } else {
+            try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                linhas = exportar(modelo, canal, formato, de, ate);
+            }
+        }
+        Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return linhas;
+    }
+
+    /**
+     * Exporta para um canal qualquer (não é fechado).
+     *
+     * @return Número de linhas de dados escritas
+     */
+    public static long exportar(MoneyCount modelo, WritableByteChannel canal, Formato formato, YearMonth de, YearMonth ate) throws IOException {
+        Escritor e = new Escritor(canal, formato);
+        if (formato == Formato.CSV) e.escrever(CABECALHO_CSV);
+
+        YearMonth inicio = de != null ? de : YearMonth.of(Year.MIN_VALUE, 1);
+        YearMonth fim = ate != null ? ate : YearMonth.of(Year.MAX_VALUE, 12);
+        for (YearMonth mes : modelo.mesesEntre(inicio, fim)) {
+            Registo r = modelo.lerRegisto(mes);
+            if (r == null) continue;
+
+            e.linha(mes, null, "rendimento", -1, null, r.getRendimento(), null, -1);
+            for (Despesa d : r.listarDespesas()) {
+                if (d instanceof DespesaFixa df) {
+                    e.linha(mes, d.getDia().toString(), "despesa_fixa", d.getIdDespesa(), d.getNome(), d.getMontante(), df.isPago(), df.getIdSerie());
+                } else {
+                    e.linha(mes, d.getDia().toString(), "despesa", d.getIdDespesa(), d.getNome(), d.getMontante(), null, -1);
+                }
+            }
+            for (Entrada en : r.getEntradas().values()) {
+                e.linha(mes, en.getDia().toString(), "entrada", en.getIdEntrada(), en.getNome(), en.getMontante(), null, -1);
+            }
+        }
+        e.despejar();
+        return e.linhas;
+    }
+
+    /**
+     * Escreve as linhas num buffer fixo, que é despejado no canal sempre que enche.
+     */
+    private static final class Escritor {
+        private final WritableByteChannel canal;
+        private final Formato formato;
+        private final ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BUFFER);
+        private final StringBuilder linha = new StringBuilder(256);
+        long linhas;
+
+        Escritor(WritableByteChannel canal, Formato formato) {
+            this.canal = canal;
+            this.formato = formato;
+        }
+
+        /**
+         * @param paga null se não for uma despesa fixa
+         * @param serie -1 se não pertencer a uma série
+         */
+        void linha(YearMonth mes, String dia, String tipo, int id, String nome, long centimos, Boolean paga, int serie) throws IOException {
+            linha.setLength(0);
+            if (formato == Formato.CSV) {
+                linha.append(mes).append(',')
+                        .append(dia != null ? dia : "").append(',')
+                        .append(tipo).append(',')
+                        .append(id >= 0 ? String.valueOf(id) : "").append(',');
+                if (nome != null) csv(nome);
+                linha.append(',');
+                euros(centimos);
+                linha.append(',').append(paga != null ? paga.toString() : "")
+                        .append(',').append(serie >= 0 ? String.valueOf(serie) : "")
+                        .append('\n');
+            } else {
+                linha.append("{\"mes\":\"").append(mes).append('"');
+                if (dia != null) linha.append(",\"dia\":\"").append(dia).append('"');
+                linha.append(",\"tipo\":\"").append(tipo).append('"');
+                if (id >= 0) linha.append(",\"id\":").append(id);
+                if (nome != null) {
+                    linha.append(",\"nome\":");
+                    json(nome);
+                }
+                linha.append(",\"montante\":");
+                euros(centimos);
+                if (paga != null) linha.append(",\"paga\":").append(paga);
+                if (serie >= 0) linha.append(",\"serie\":").append(serie);
+                linha.append("}\n");
+            }
+            escrever(linha);
+            linhas++;
+        }
+
+        private void euros(long centimos) {
+            if (centimos < 0) linha.append('-');
+            long abs = Math.abs(centimos);
+            long resto = abs % 100;
+            linha.append(abs / 100).append('.').append(resto < 10 ? "0" : "").append(resto);
+        }
+
+        private void csv(String texto) {
+            boolean aspas = texto.indexOf(',') >= 0 || texto.indexOf('"') >= 0 || texto.indexOf('\n') >= 0 || texto.indexOf('\r') >= 0;
+            if (!aspas) {
+                linha.append(texto);
+                return;
+            }
+            linha.append('"').append(texto.replace("\"", "\"\"")).append('"');
+        }
+
+        private void json(String texto) {
+            linha.append('"');
+            for (int i = 0; i < texto.length(); i++) {
+                char ch = texto.charAt(i);
+                switch (ch) {
+                    case '"' -> linha.append("\\\"");
+                    case '\\' -> linha.append("\\\\");
+                    case '\n' -> linha.append("\\n");
+                    case '\r' -> linha.append("\\r");
+                    case '\t' -> linha.append("\\t");
+                    default -> {
+                        if (ch < 0x20) linha.append(String.format("\\u%04x", (int) ch));
+                        else linha.append(ch);
+                    }
+                }
+            }
+            linha.append('"');
+        }
+
+        void escrever(CharSequence texto) throws IOException {
+            byte[] bytes = texto.toString().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining()) despejar();
+            if (bytes.length > buffer.capacity()) {
+                ByteBuffer grande = ByteBuffer.wrap(bytes);
+                while (grande.hasRemaining()) canal.write(grande);
+                return;
+            }
+            buffer.put(bytes);
+        }
+
+        void despejar() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) canal.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.Despesa;
+import model.DespesaFixa;
+import model.DespesaRecorrente;
+import model.DicionarioNomes;
+import model.Entrada;
+import model.FonteRegistos;
+import model.MoneyCount;
+import model.Registo;
+import model.ResumoMes;
+
+/**
+ * Formato binário do ficheiro de dados (big-endian).
+ *
+ * <pre>
+ * Cabeçalho   magia "MCNT" | versão u16 | reservado u16 | nº nomes i32 | nº meses i32
+ *             | offset dicionário i64 | offset diretório i64 | tamanho do ficheiro i64
+ *             | próximo id i32 | offset recorrentes i64
+ * Dicionário  por nome: tamanho i32 + bytes UTF-8
+ * Segmentos   por mês: rendimento € | nº despesas i32 | nº entradas i32 | despesas | entradas
+ *               despesa: id i32 | nome i32 | montante € | dia i32 (epoch day) | flags u8
+ *               entrada: id i32 | nome i32 | montante € | dia i32 (epoch day)
+ * Recorrentes nº séries i32, e por série: id i32 | nome i32 | início i32 | fim i32 (SEM_FIM se não tiver)
+ *             | nº escalões i32 + (mês i32 | montante €) | nº ajustes i32 + (mês i32 | montante €)
+ *             | nº pagos i32 + mês i32 | nº removidos i32 + mês i32
+ * Diretório   por mês: mês i32 (ano * 12 + mês - 1) | offset i64 | tamanho i32
+ *             | rendimento € | total entradas € | total despesas € | id máximo i32
+ * </pre>
+ *
+ * Os montantes (€) são cêntimos em i64.
+ *
+ * Na abertura só são lidos o cabeçalho, o dicionário, as despesas recorrentes e o diretório;
+ * cada segmento é lido do ficheiro mapeado em memória quando o mês é usado pela primeira vez.
+ * Os segmentos e os resumos do diretório não incluem as despesas recorrentes.
+ */
+public class FormatoBinario {
+
+    static final int MAGIA = 0x4D434E54; // "MCNT"
+    static final short VERSAO = 1;
+
+    private static final int TAMANHO_CABECALHO = 52;
+    private static final int SEM_FIM = Integer.MIN_VALUE;
+    private static final int TAMANHO_DESPESA = 21;
+    private static final int TAMANHO_ENTRADA = 20;
+    private static final int TAMANHO_DIRETORIO = 44;
+
+    private static final byte FLAG_FIXA = 0x01;
+    private static final byte FLAG_PAGA = 0x02;
+
+    private static final ValueLayout.OfShort U16 = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt I32 = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong I64 = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Segmentos de um ficheiro já gravado, lidos um mês de cada vez.
+     * Por omissão o ficheiro é aberto pelo caminho a cada leitura (o programa substitui-o ao gravar,
+     * e as posições são atualizadas ao mesmo tempo). Uma fonte só de leitura fica com o ficheiro
+     * que leu aberto: se outro processo o substituir, os meses continuam a vir do ficheiro original.
+     */
+    private static final class SegmentosFicheiro implements FonteRegistos {
+        private Path caminho;
+        private int[] nomes; // Código no DicionarioNomes de cada nome do ficheiro
+        private Map<YearMonth, long[]> posicoes; // mês -> {offset, tamanho}
+        private FileChannel aberto; // Só numa fonte só de leitura
+
+        SegmentosFicheiro(Path caminho, int[] nomes, Map<YearMonth, long[]> posicoes, FileChannel aberto) {
+            this.caminho = caminho;
+            this.nomes = nomes;
+            this.posicoes = posicoes;
+            this.aberto = aberto;
+        }
+
+        @Override
+        public synchronized Registo carregar(YearMonth mes) {
+            long[] p = posicoes.get(mes);
+            try (Arena arena = Arena.ofConfined()) {
+                FileChannel c = canal();
+                try {
+                    MemorySegment s = c.map(FileChannel.MapMode.READ_ONLY, p[0], p[1], arena);
+                    return lerSegmento(s, 0, mes, nomes);
+                } finally {
+                    largar(c);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Erro ao ler " + mes + " de " + caminho.getFileName(), e);
+            }
+        }
+
+        @Override
+        public synchronized void fechar() {
+            if (aberto == null) return;
+            try {
+                aberto.close();
+            } catch (IOException e) {
+                System.err.println("⚠️ Erro ao fechar ficheiro " + caminho.getFileName() + ": " + e.getMessage());
+            }
+            aberto = null;
+        }
+
+        private FileChannel canal() throws IOException {
+            return aberto != null ? aberto : FileChannel.open(caminho, StandardOpenOption.READ);
+        }
+
+        private void largar(FileChannel c) throws IOException {
+            if (c != aberto) c.close();
+        }
+
+        synchronized int[] nomes() {
+            return nomes;
+        }
+
+        synchronized long tamanho(YearMonth mes) {
+            return posicoes.get(mes)[1];
+        }
+
+        synchronized byte[] copiarSegmento(YearMonth mes) throws IOException {
+            long[] p = posicoes.get(mes);
+            try (Arena arena = Arena.ofConfined()) {
+                FileChannel c = canal();
+                try {
+                    return c.map(FileChannel.MapMode.READ_ONLY, p[0], p[1], arena).toArray(ValueLayout.JAVA_BYTE);
+                } finally {
+                    largar(c);
+                }
+            }
+        }
+
+        /**
+         * Substitui o ficheiro por um novo e passa a ler dele. Feito sob o mesmo lock das
+         * leituras, para nenhum mês ser lido do ficheiro novo com as posições antigas.
+         * Quem partilha esta fonte (o modelo e os seus instantâneos) fica logo a usar o ficheiro novo.
+         */
+        synchronized void substituir(Path temporario, Path destino, int[] nomes, Map<YearMonth, long[]> posicoes) throws IOException {
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fechar(); // Daqui em diante lê-se o ficheiro novo, pelo caminho
+            this.caminho = destino;
+            this.nomes = nomes;
+            this.posicoes = posicoes;
+        }
+    }
+
+    /**
+     * Grava o modelo completo no ficheiro indicado (num ficheiro temporário que depois o substitui).
+     * Os meses que nunca foram carregados são copiados tal como estão no ficheiro anterior,
+     * a não ser que este seja de outro formato.
+     */
+    public static void escrever(Path caminho, MoneyCount modelo) throws IOException {
+        List<YearMonth> meses = new ArrayList<>(modelo.getRegistos().keySet());
+        meses.sort(null);
+
+        // Dicionário: começa pelo do ficheiro anterior para os segmentos copiados continuarem válidos
+        SegmentosFicheiro anterior = modelo.getFonte() instanceof SegmentosFicheiro sf ? sf : null;
+        // Meses que não podem ser copiados (vindos de outro formato) são lidos uma vez para ser regravados
+        Map<YearMonth, Registo> relidos = anterior == null ? new HashMap<>() : null;
+        DicionarioFicheiro nomes = new DicionarioFicheiro();
+        if (anterior != null) {
+            for (int codigo : anterior.nomes()) nomes.adicionar(codigo);
+        }
+        for (YearMonth mes : meses) {
+            Registo r = registoAGravar(modelo, anterior, relidos, mes);
+            if (r == null) continue;
+            for (Despesa d : r.getDespesasRegistadas().values()) nomes.adicionar(d.getCodigoNome());
+            for (Entrada e : r.getEntradas().values()) nomes.adicionar(e.getCodigoNome());
+        }
+        List<DespesaRecorrente> recorrentes = new ArrayList<>(modelo.getRecorrentes());
+        for (DespesaRecorrente t : recorrentes) nomes.adicionar(t.getCodigoNome());
+
+        Map<YearMonth, long[]> posicoes = new HashMap<>();
+        long offset = TAMANHO_CABECALHO + nomes.bytes();
+        for (YearMonth mes : meses) {
+            Registo r = registoAGravar(modelo, anterior, relidos, mes);
+            long tamanho = r != null ? tamanhoSegmento(r) : anterior.tamanho(mes);
+            posicoes.put(mes, new long[] { offset, tamanho });
+            offset += tamanho;
+        }
+        long offsetRecorrentes = offset;
+        long offsetDiretorio = offsetRecorrentes + tamanhoRecorrentes(recorrentes);
+        long tamanhoFicheiro = offsetDiretorio + (long) TAMANHO_DIRETORIO * meses.size();
+
+        Path temporario = Path.of(caminho + ".tmp");
+        try (FileChannel c = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(c), 1 << 16))) {
+
+            out.writeInt(MAGIA);
+            out.writeShort(VERSAO);
+            out.writeShort(0);
+            out.writeInt(nomes.size());
+            out.writeInt(meses.size());
+            out.writeLong(TAMANHO_CABECALHO);
+            out.writeLong(offsetDiretorio);
+            out.writeLong(tamanhoFicheiro);
+            out.writeInt(modelo.getProximoId());
+            out.writeLong(offsetRecorrentes);
+
+            nomes.escrever(out);
+
+            for (YearMonth mes : meses) {
+                Registo r = registoAGravar(modelo, anterior, relidos, mes);
+                if (r == null) {
+                    out.write(anterior.copiarSegmento(mes));
+                    continue;
+                }
+
+                out.writeLong(r.getRendimento());
+                out.writeInt(r.getDespesasRegistadas().size());
+                out.writeInt(r.getEntradas().size());
+                for (Despesa d : r.getDespesasRegistadas().values()) {
+                    byte flags = 0;
+                    if (d instanceof DespesaFixa df) {
+                        flags |= FLAG_FIXA;
+                        if (df.isPago()) flags |= FLAG_PAGA;
+                    }
+                    out.writeInt(d.getIdDespesa());
+                    out.writeInt(nomes.codigo(d.getCodigoNome()));
+                    out.writeLong(d.getMontante());
+                    out.writeInt((int) d.getDia().toEpochDay());
+                    out.writeByte(flags);
+                }
+                for (Entrada e : r.getEntradas().values()) {
+                    out.writeInt(e.getIdEntrada());
+                    out.writeInt(nomes.codigo(e.getCodigoNome()));
+                    out.writeLong(e.getMontante());
+                    out.writeInt((int) e.getDia().toEpochDay());
+                }
+            }
+
+            escreverRecorrentes(out, recorrentes, nomes);
+
+            for (YearMonth mes : meses) {
+                long[] p = posicoes.get(mes);
+                ResumoMes resumo = modelo.getResumoRegistado(mes);
+                out.writeInt(ordinal(mes));
+                out.writeLong(p[0]);
+                out.writeInt((int) p[1]);
+                out.writeLong(resumo.rendimento());
+                out.writeLong(resumo.totalEntradas());
+                out.writeLong(resumo.totalDespesas());
+                out.writeInt(resumo.idMaximo());
+            }
+            out.flush();
+            c.force(true);
+        }
+
+        if (anterior != null) {
+            anterior.substituir(temporario, caminho, nomes.codigosGlobais(), posicoes);
+        } else {
+            // Um ficheiro colunar fica mapeado: tem de ser fechado antes de ser substituído
+            if (modelo.getFonte() != null) modelo.getFonte().fechar();
+            Files.move(temporario, caminho, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modelo.setFonte(new SegmentosFicheiro(caminho, nomes.codigosGlobais(), posicoes, null));
+        }
+    }
+
+    /**
+     * @return O registo do mês a escrever por inteiro, ou null se o segmento pode ser copiado do ficheiro anterior.
+     */
+    private static Registo registoAGravar(MoneyCount modelo, SegmentosFicheiro anterior, Map<YearMonth, Registo> relidos, YearMonth mes) {
+        Registo r = modelo.getRegistoCarregado(mes);
+        if (r != null || relidos == null) return r;
+        // Lido só para ser regravado, sem entrar no modelo
+        return relidos.computeIfAbsent(mes, modelo.getFonte()::carregar);
+    }
+
+    /**
+     * Abre o ficheiro indicado. Os meses só são lidos quando forem usados.
+     */
+    public static MoneyCount ler(Path caminho) throws IOException {
+        try (FileChannel c = FileChannel.open(caminho, StandardOpenOption.READ)) {
+            return ler(caminho, c, false);
+        }
+    }
+
+    /**
+     * Abre o ficheiro indicado só para leitura, sem nunca o regravar. O ficheiro fica aberto enquanto
+     * o modelo o usar, e os meses lidos mais tarde vêm dele mesmo que o programa o substitua
+     * entretanto (fecha-se com {@link FonteRegistos#fechar()}).
+     */
+    public static MoneyCount lerSoLeitura(Path caminho) throws IOException {
+        FileChannel c = FileChannel.open(caminho, StandardOpenOption.READ);
+        try {
+            return ler(caminho, c, true);
+        } catch (IOException | RuntimeException e) {
+            c.close();
+            throw e;
+        }
+    }
+
+    private static MoneyCount ler(Path caminho, FileChannel c, boolean manterAberto) throws IOException {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment s = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size(), arena);
+
+            if (s.byteSize() < TAMANHO_CABECALHO || s.get(I32, 0) != MAGIA) {
+                throw new IOException("assinatura inválida");
+            }
+            short versao = s.get(U16, 4);
+            if (versao != VERSAO) {
+                throw new IOException("versão " + versao + " não suportada");
+            }
+            int numNomes = s.get(I32, 8);
+            int numMeses = s.get(I32, 12);
+            long offsetDicionario = s.get(I64, 16);
+            long offsetDiretorio = s.get(I64, 24);
+            if (s.get(I64, 32) != s.byteSize()) {
+                throw new IOException("ficheiro truncado");
+            }
+
+            int[] nomes = lerDicionario(s, offsetDicionario, numNomes);
+
+            Map<YearMonth, long[]> posicoes = new HashMap<>();
+            Map<YearMonth, ResumoMes> indice = new HashMap<>();
+            for (int m = 0; m < numMeses; m++) {
+                long entrada = offsetDiretorio + (long) m * TAMANHO_DIRETORIO;
+                YearMonth mes = mesDoOrdinal(s.get(I32, entrada));
+                long offset = s.get(I64, entrada + 4);
+                int tamanho = s.get(I32, entrada + 12);
+                posicoes.put(mes, new long[] { offset, tamanho });
+                indice.put(mes, new ResumoMes(s.get(I64, entrada + 16), s.get(I64, entrada + 24),
+                        s.get(I64, entrada + 32), s.get(I32, entrada + 40)));
+            }
+            List<DespesaRecorrente> recorrentes = lerRecorrentes(s, s.get(I64, 44), nomes);
+
+            SegmentosFicheiro fonte = new SegmentosFicheiro(caminho, nomes, posicoes, manterAberto ? c : null);
+            MoneyCount modelo = new MoneyCount(fonte, indice, recorrentes);
+            modelo.avancarProximoId(s.get(I32, 40));
+            return modelo;
+        }
+    }
+
+    private static Registo lerSegmento(MemorySegment s, long pos, YearMonth mes, int[] nomes) {
+        Registo r = new Registo(mes, s.get(I64, pos));
+        int numDespesas = s.get(I32, pos + 8);
+        int numEntradas = s.get(I32, pos + 12);
+        pos += 16;
+
+        List<Despesa> despesas = new ArrayList<>(numDespesas);
+        for (int i = 0; i < numDespesas; i++, pos += TAMANHO_DESPESA) {
+            int id = s.get(I32, pos);
+            int nome = nomes[s.get(I32, pos + 4)];
+            long montante = s.get(I64, pos + 8);
+            LocalDate dia = LocalDate.ofEpochDay(s.get(I32, pos + 16));
+            byte flags = s.get(ValueLayout.JAVA_BYTE, pos + 20);
+            if ((flags & FLAG_FIXA) != 0) {
+                despesas.add(new DespesaFixa(id, nome, montante, (flags & FLAG_PAGA) != 0, dia));
+            } else {
+                despesas.add(new Despesa(id, nome, montante, dia));
+            }
+        }
+
+        List<Entrada> entradas = new ArrayList<>(numEntradas);
+        for (int i = 0; i < numEntradas; i++, pos += TAMANHO_ENTRADA) {
+            int id = s.get(I32, pos);
+            int nome = nomes[s.get(I32, pos + 4)];
+            long montante = s.get(I64, pos + 8);
+            LocalDate dia = LocalDate.ofEpochDay(s.get(I32, pos + 16));
+            entradas.add(new Entrada(id, nome, montante, dia));
+        }
+        r.adicionarTodas(despesas, entradas);
+        return r;
+    }
+
+    static List<DespesaRecorrente> lerRecorrentes(MemorySegment s, long pos, int[] nomes) {
+        int numRecorrentes = s.get(I32, pos);
+        pos += 4;
+        List<DespesaRecorrente> recorrentes = new ArrayList<>(numRecorrentes);
+        for (int i = 0; i < numRecorrentes; i++) {
+            int id = s.get(I32, pos);
+            String nome = DicionarioNomes.nome(nomes[s.get(I32, pos + 4)]);
+            YearMonth inicio = mesDoOrdinal(s.get(I32, pos + 8));
+            int fim = s.get(I32, pos + 12);
+            pos += 16;
+
+            Map<YearMonth, Long> montantes = new HashMap<>();
+            pos = lerMontantes(s, pos, montantes);
+            Map<YearMonth, Long> ajustes = new HashMap<>();
+            pos = lerMontantes(s, pos, ajustes);
+            Set<YearMonth> pagos = new HashSet<>();
+            pos = lerMeses(s, pos, pagos);
+            Set<YearMonth> removidos = new HashSet<>();
+            pos = lerMeses(s, pos, removidos);
+
+            recorrentes.add(new DespesaRecorrente(id, nome, inicio, fim == SEM_FIM ? null : mesDoOrdinal(fim),
+                    montantes, ajustes, pagos, removidos));
+        }
+        return recorrentes;
+    }
+
+    private static long lerMontantes(MemorySegment s, long pos, Map<YearMonth, Long> destino) {
+        int n = s.get(I32, pos);
+        pos += 4;
+        for (int i = 0; i < n; i++, pos += 12) {
+            destino.put(mesDoOrdinal(s.get(I32, pos)), s.get(I64, pos + 4));
+        }
+        return pos;
+    }
+
+    private static long lerMeses(MemorySegment s, long pos, Set<YearMonth> destino) {
+        int n = s.get(I32, pos);
+        pos += 4;
+        for (int i = 0; i < n; i++, pos += 4) {
+            destino.add(mesDoOrdinal(s.get(I32, pos)));
+        }
+        return pos;
+    }
+
+    /**
+     * Escreve a secção das despesas recorrentes (também usada pelo {@link FormatoColunar}).
+     */
+    static void escreverRecorrentes(DataOutputStream out, List<DespesaRecorrente> recorrentes, DicionarioFicheiro nomes) throws IOException {
+        out.writeInt(recorrentes.size());
+        for (DespesaRecorrente t : recorrentes) {
+            out.writeInt(t.getId());
+            out.writeInt(nomes.codigo(t.getCodigoNome()));
+            out.writeInt(ordinal(t.getInicio()));
+            out.writeInt(t.getFim() != null ? ordinal(t.getFim()) : SEM_FIM);
+            escreverMontantes(out, t.getMontantes());
+            escreverMontantes(out, t.getAjustes());
+            escreverMeses(out, t.getPagos());
+            escreverMeses(out, t.getRemovidos());
+        }
+    }
+
+    private static void escreverMontantes(DataOutputStream out, Map<YearMonth, Long> montantes) throws IOException {
+        out.writeInt(montantes.size());
+        for (Map.Entry<YearMonth, Long> entry : montantes.entrySet()) {
+            out.writeInt(ordinal(entry.getKey()));
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static void escreverMeses(DataOutputStream out, Set<YearMonth> meses) throws IOException {
+        out.writeInt(meses.size());
+        for (YearMonth mes : meses) {
+            out.writeInt(ordinal(mes));
+        }
+    }
+
+    static long tamanhoRecorrentes(List<DespesaRecorrente> recorrentes) {
+        long tamanho = 4;
+        for (DespesaRecorrente t : recorrentes) {
+            tamanho += 16 + 4 + 12L * t.getMontantes().size() + 4 + 12L * t.getAjustes().size()
+                    + 4 + 4L * t.getPagos().size() + 4 + 4L * t.getRemovidos().size();
+        }
+        return tamanho;
+    }
+
+    /**
+     * Lê o dicionário do ficheiro (também usado pelo {@link FormatoColunar}).
+     *
+     * @return O código no {@link DicionarioNomes} de cada nome, pela ordem do ficheiro.
+     */
+    static int[] lerDicionario(MemorySegment s, long pos, int numNomes) {
+        int[] nomes = new int[numNomes];
+        for (int i = 0; i < numNomes; i++) {
+            int tamanho = s.get(I32, pos);
+            byte[] bytes = s.asSlice(pos + 4, tamanho).toArray(ValueLayout.JAVA_BYTE);
+            nomes[i] = DicionarioNomes.codigo(new String(bytes, StandardCharsets.UTF_8));
+            pos += 4 + tamanho;
+        }
+        return nomes;
+    }
+
+    /**
+     * Dicionário de nomes de um ficheiro a gravar: dá a cada código do {@link DicionarioNomes}
+     * um código no ficheiro, por ordem de chegada. A tradução é um array indexado pelo código global.
+     */
+    static final class DicionarioFicheiro {
+        private int[] noFicheiro = new int[0]; // Código global -> código no ficheiro + 1 (0: ainda não está)
+        private int[] globais = new int[16];   // Código no ficheiro -> código global
+        private final List<byte[]> nomes = new ArrayList<>();
+        private long bytes;
+
+        void adicionar(int global) {
+            if (global >= noFicheiro.length) {
+                noFicheiro = Arrays.copyOf(noFicheiro, Math.max(global + 1, DicionarioNomes.tamanho()));
+            }
+            if (noFicheiro[global] != 0) return;
+            byte[] nome = DicionarioNomes.nome(global).getBytes(StandardCharsets.UTF_8);
+            if (nomes.size() == globais.length) globais = Arrays.copyOf(globais, globais.length * 2);
+            globais[nomes.size()] = global;
+            nomes.add(nome);
+            noFicheiro[global] = nomes.size();
+            bytes += 4 + nome.length;
+        }
+
+        /**
+         * @return O código no ficheiro de um nome já adicionado.
+         */
+        int codigo(int global) {
+            return noFicheiro[global] - 1;
+        }
+
+        int size() {
+            return nomes.size();
+        }
+
+        /**
+         * @return Tamanho do dicionário no ficheiro.
+         */
+        long bytes() {
+            return bytes;
+        }
+
+        void escrever(DataOutputStream out) throws IOException {
+            for (byte[] nome : nomes) {
+                out.writeInt(nome.length);
+                out.write(nome);
+            }
+        }
+
+        int[] codigosGlobais() {
+            return Arrays.copyOf(globais, nomes.size());
+        }
+    }
+
+    private static int tamanhoSegmento(Registo r) {
+        return 16 + TAMANHO_DESPESA * r.getDespesasRegistadas().size() + TAMANHO_ENTRADA * r.getEntradas().size();
+    }
+
+    static int ordinal(YearMonth mes) {
+        return mes.getYear() * 12 + mes.getMonthValue() - 1;
+    }
+
+    static YearMonth mesDoOrdinal(int ordinal) {
+        return YearMonth.of(Math.floorDiv(ordinal, 12), Math.floorMod(ordinal, 12) + 1);
+    }
+}
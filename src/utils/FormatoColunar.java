@@ -0,0 +1,398 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Despesa;
+import model.DespesaFixa;
+import model.DespesaRecorrente;
+import model.Entrada;
+import model.FonteRegistos;
+import model.MoneyCount;
+import model.Registo;
+import model.ResumoMes;
+
+/**
+ * Formato colunar do ficheiro de dados (big-endian), alternativo ao {@link FormatoBinario}.
+ * Ativa-se com {@code -Dmoneycount.armazenamento=colunas}.
+ *
+ * <pre>
+ * Cabeçalho   magia "MCOL" | versão u16 | reservado u16 | nº nomes i32 | nº meses i32 | nº itens i32 | próximo id i32
+ *             | offset dicionário i64 | offset meses i64 | offset colunas i64 | offset recorrentes i64 | tamanho do ficheiro i64
+ * Dicionário  por nome: tamanho i32 + bytes UTF-8
+ * Meses       por mês: mês i32 | primeiro item i32 | nº despesas i32 | nº entradas i32
+ *             | rendimento i64 | total entradas i64 | total despesas i64 | id máximo i32
+ * Colunas     uma coluna inteira de cada vez, com um valor por item (cada mês: despesas e depois entradas):
+ *             id i32 | mês i32 | dia i32 (epoch day) | montante i64 (cêntimos) | nome i32 | flags u8
+ * Recorrentes como no {@link FormatoBinario}
+ * </pre>
+ *
+ * O ficheiro fica mapeado em memória enquanto o modelo o usar: abrir é ler o cabeçalho,
+ * o dicionário e a tabela de meses, e os itens de um mês só viram objetos quando o mês é usado.
+ * Os meses que não foram carregados passam de um ficheiro para o seguinte coluna a coluna, sem ser lidos.
+ */
+public class FormatoColunar {
+
+    static final int MAGIA = 0x4D434F4C; // "MCOL"
+    static final short VERSAO = 1;
+
+    private static final int TAMANHO_CABECALHO = 64;
+    private static final int TAMANHO_MES = 44;
+
+    private static final byte FLAG_FIXA = 0x01;
+    private static final byte FLAG_PAGA = 0x02;
+
+    // Colunas pela ordem em que estão no ficheiro, e a largura em bytes de cada uma
+    private static final int COLUNA_ID = 0;
+    private static final int COLUNA_MES = 1;
+    private static final int COLUNA_DIA = 2;
+    private static final int COLUNA_MONTANTE = 3;
+    private static final int COLUNA_NOME = 4;
+    private static final int COLUNA_FLAGS = 5;
+    private static final int[] LARGURAS = { 4, 4, 4, 8, 4, 1 };
+    private static final int LARGURA_ITEM = 25;
+
+    private static final ValueLayout.OfShort U16 = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt I32 = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong I64 = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Ficheiro colunar mapeado em memória, de onde os meses são lidos quando forem usados.
+     */
+    private static final class ColunasFicheiro implements FonteRegistos {
+        private Path caminho;
+        private Arena arena;
+        private MemorySegment s;
+        private int[] nomes; // Código no DicionarioNomes de cada nome do ficheiro
+        private Map<YearMonth, Long> meses; // mês -> posição na tabela de meses
+        private long[] colunas;             // offset de cada coluna
+
+        ColunasFicheiro(Path caminho) throws IOException {
+            abrir(caminho);
+        }
+
+        private void abrir(Path caminho) throws IOException {
+            Arena novaArena = Arena.ofShared();
+            try (FileChannel c = FileChannel.open(caminho, StandardOpenOption.READ)) {
+                MemorySegment novo = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size(), novaArena);
+                if (novo.byteSize() < TAMANHO_CABECALHO || novo.get(I32, 0) != MAGIA) {
+                    throw new IOException("assinatura inválida");
+                }
+                short versao = novo.get(U16, 4);
+                if (versao > VERSAO) {
+                    throw new IOException("versão " + versao + " não suportada");
+                }
+                if (novo.get(I64, 56) != novo.byteSize()) {
+                    throw new IOException("ficheiro truncado");
+                }
+
+                int[] novosNomes = FormatoBinario.lerDicionario(novo, novo.get(I64, 24), novo.get(I32, 8));
+
+                int numMeses = novo.get(I32, 12);
+                long offsetMeses = novo.get(I64, 32);
+                Map<YearMonth, Long> novosMeses = new HashMap<>();
+                for (int m = 0; m < numMeses; m++) {
+                    long entrada = offsetMeses + (long) m * TAMANHO_MES;
+                    novosMeses.put(FormatoBinario.mesDoOrdinal(novo.get(I32, entrada)), entrada);
+                }
+
+                int numItens = novo.get(I32, 16);
+                long[] novasColunas = new long[LARGURAS.length];
+                long offset = novo.get(I64, 40);
+                for (int k = 0; k < LARGURAS.length; k++) {
+                    novasColunas[k] = offset;
+                    offset += (long) LARGURAS[k] * numItens;
+                }
+
+                this.caminho = caminho;
+                this.arena = novaArena;
+                this.s = novo;
+                this.nomes = novosNomes;
+                this.meses = novosMeses;
+                this.colunas = novasColunas;
+            } catch (IOException | RuntimeException e) {
+                novaArena.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public synchronized void fechar() {
+            if (arena == null) return;
+            arena.close();
+            arena = null;
+            s = null;
+        }
+
+        /**
+         * Volta a mapear o ficheiro, se tiver sido fechado.
+         */
+        private void garantirAberto() {
+            if (s != null) return;
+            try {
+                abrir(caminho);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Erro ao reabrir " + caminho.getFileName(), e);
+            }
+        }
+
+        @Override
+        public synchronized Registo carregar(YearMonth mes) {
+            garantirAberto();
+            long entrada = meses.get(mes);
+            int primeiro = s.get(I32, entrada + 4);
+            int numDespesas = s.get(I32, entrada + 8);
+            int numEntradas = s.get(I32, entrada + 12);
+            Registo r = new Registo(mes, s.get(I64, entrada + 16));
+
+            List<Despesa> despesas = new ArrayList<>(numDespesas);
+            for (int i = primeiro; i < primeiro + numDespesas; i++) {
+                int nome = nomes[s.get(I32, colunas[COLUNA_NOME] + 4L * i)];
+                int id = s.get(I32, colunas[COLUNA_ID] + 4L * i);
+                long montante = s.get(I64, colunas[COLUNA_MONTANTE] + 8L * i);
+                LocalDate dia = LocalDate.ofEpochDay(s.get(I32, colunas[COLUNA_DIA] + 4L * i));
+                byte flags = s.get(ValueLayout.JAVA_BYTE, colunas[COLUNA_FLAGS] + i);
+                if ((flags & FLAG_FIXA) != 0) {
+                    despesas.add(new DespesaFixa(id, nome, montante, (flags & FLAG_PAGA) != 0, dia));
+                } else {
+                    despesas.add(new Despesa(id, nome, montante, dia));
+                }
+            }
+
+            List<Entrada> entradas = new ArrayList<>(numEntradas);
+            for (int i = primeiro + numDespesas; i < primeiro + numDespesas + numEntradas; i++) {
+                int nome = nomes[s.get(I32, colunas[COLUNA_NOME] + 4L * i)];
+                int id = s.get(I32, colunas[COLUNA_ID] + 4L * i);
+                long montante = s.get(I64, colunas[COLUNA_MONTANTE] + 8L * i);
+                LocalDate dia = LocalDate.ofEpochDay(s.get(I32, colunas[COLUNA_DIA] + 4L * i));
+                entradas.add(new Entrada(id, nome, montante, dia));
+            }
+            r.adicionarTodas(despesas, entradas);
+            return r;
+        }
+
+        synchronized int[] nomes() {
+            return nomes;
+        }
+
+        /**
+         * @return {nº despesas, nº entradas} do mês.
+         */
+        synchronized int[] contagens(YearMonth mes) {
+            garantirAberto();
+            long entrada = meses.get(mes);
+            return new int[] { s.get(I32, entrada + 8), s.get(I32, entrada + 12) };
+        }
+
+        /**
+         * @return Os bytes de uma coluna que pertencem ao mês, tal como estão no ficheiro.
+         */
+        synchronized byte[] copiarColuna(YearMonth mes, int coluna) {
+            garantirAberto();
+            long entrada = meses.get(mes);
+            int primeiro = s.get(I32, entrada + 4);
+            int numItens = s.get(I32, entrada + 8) + s.get(I32, entrada + 12);
+            int largura = LARGURAS[coluna];
+            return s.asSlice(colunas[coluna] + (long) largura * primeiro, (long) largura * numItens).toArray(ValueLayout.JAVA_BYTE);
+        }
+
+        /**
+         * Substitui o ficheiro por um novo e passa a ler dele, sob o mesmo lock das leituras.
+         * O mapeamento antigo é fechado antes (em Windows não se substitui um ficheiro mapeado).
+         */
+        synchronized void substituir(Path temporario, Path destino) throws IOException {
+            fechar();
+            try {
+                Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                abrir(caminho);
+                throw e;
+            }
+            abrir(destino);
+        }
+    }
+
+    /**
+     * @return true se o ficheiro está no formato colunar.
+     */
+    public static boolean eColunar(Path caminho) throws IOException {
+        try (FileChannel c = FileChannel.open(caminho, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(4);
+            c.read(cabecalho, 0);
+            return cabecalho.flip().remaining() == 4 && cabecalho.getInt() == MAGIA;
+        }
+    }
+
+    /**
+     * Abre o ficheiro indicado, que fica mapeado em memória. Os meses só são lidos quando forem usados.
+     */
+    public static MoneyCount ler(Path caminho) throws IOException {
+        ColunasFicheiro fonte = new ColunasFicheiro(caminho);
+        MemorySegment s = fonte.s;
+
+        Map<YearMonth, ResumoMes> indice = new HashMap<>();
+        for (Map.Entry<YearMonth, Long> entry : fonte.meses.entrySet()) {
+            long entrada = entry.getValue();
+            indice.put(entry.getKey(), new ResumoMes(s.get(I64, entrada + 16), s.get(I64, entrada + 24),
+                    s.get(I64, entrada + 32), s.get(I32, entrada + 40)));
+        }
+        List<DespesaRecorrente> recorrentes = FormatoBinario.lerRecorrentes(s, s.get(I64, 48), fonte.nomes);
+
+        MoneyCount modelo = new MoneyCount(fonte, indice, recorrentes);
+        modelo.avancarProximoId(s.get(I32, 20));
+        return modelo;
+    }
+
+    /**
+     * Grava o modelo completo no ficheiro indicado (num ficheiro temporário que depois o substitui).
+     * Os meses que nunca foram carregados são copiados coluna a coluna do ficheiro anterior; se o modelo
+     * vier de outro formato, são lidos dele uma vez para ser regravados.
+     */
+    public static void escrever(Path caminho, MoneyCount modelo) throws IOException {
+        List<YearMonth> meses = new ArrayList<>(modelo.getRegistos().keySet());
+        meses.sort(null);
+
+        ColunasFicheiro anterior = modelo.getFonte() instanceof ColunasFicheiro cf ? cf : null;
+        Registo[] registos = new Registo[meses.size()]; // null: copiado do ficheiro anterior
+        int[][] contagens = new int[meses.size()][];
+        for (int m = 0; m < meses.size(); m++) {
+            YearMonth mes = meses.get(m);
+            Registo r = modelo.getRegistoCarregado(mes);
+            if (r == null && anterior == null) r = modelo.getFonte().carregar(mes);
+            registos[m] = r;
+            contagens[m] = r != null ? new int[] { r.getDespesasRegistadas().size(), r.getEntradas().size() } : anterior.contagens(mes);
+        }
+
+        // Dicionário: começa pelo do ficheiro anterior para as colunas copiadas continuarem válidas
+        FormatoBinario.DicionarioFicheiro nomes = new FormatoBinario.DicionarioFicheiro();
+        if (anterior != null) {
+            for (int codigo : anterior.nomes()) nomes.adicionar(codigo);
+        }
+        for (Registo r : registos) {
+            if (r == null) continue;
+            for (Despesa d : r.getDespesasRegistadas().values()) nomes.adicionar(d.getCodigoNome());
+            for (Entrada e : r.getEntradas().values()) nomes.adicionar(e.getCodigoNome());
+        }
+        List<DespesaRecorrente> recorrentes = new ArrayList<>(modelo.getRecorrentes());
+        for (DespesaRecorrente t : recorrentes) nomes.adicionar(t.getCodigoNome());
+
+        int numItens = 0;
+        for (int[] n : contagens) numItens += n[0] + n[1];
+        long offsetMeses = TAMANHO_CABECALHO + nomes.bytes();
+        long offsetColunas = offsetMeses + (long) TAMANHO_MES * meses.size();
+        long offsetRecorrentes = offsetColunas + (long) LARGURA_ITEM * numItens;
+        long tamanhoFicheiro = offsetRecorrentes + FormatoBinario.tamanhoRecorrentes(recorrentes);
+
+        Path temporario = Path.of(caminho + ".tmp");
+        try (FileChannel c = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(c), 1 << 16))) {
+
+            out.writeInt(MAGIA);
+            out.writeShort(VERSAO);
+            out.writeShort(0);
+            out.writeInt(nomes.size());
+            out.writeInt(meses.size());
+            out.writeInt(numItens);
+            out.writeInt(modelo.getProximoId());
+            out.writeLong(TAMANHO_CABECALHO);
+            out.writeLong(offsetMeses);
+            out.writeLong(offsetColunas);
+            out.writeLong(offsetRecorrentes);
+            out.writeLong(tamanhoFicheiro);
+
+            nomes.escrever(out);
+
+            int primeiro = 0;
+            for (int m = 0; m < meses.size(); m++) {
+                YearMonth mes = meses.get(m);
+                ResumoMes resumo = modelo.getResumoRegistado(mes);
+                out.writeInt(FormatoBinario.ordinal(mes));
+                out.writeInt(primeiro);
+                out.writeInt(contagens[m][0]);
+                out.writeInt(contagens[m][1]);
+                out.writeLong(resumo.rendimento());
+                out.writeLong(resumo.totalEntradas());
+                out.writeLong(resumo.totalDespesas());
+                out.writeInt(resumo.idMaximo());
+                primeiro += contagens[m][0] + contagens[m][1];
+            }
+
+            for (int coluna = 0; coluna < LARGURAS.length; coluna++) {
+                for (int m = 0; m < meses.size(); m++) {
+                    if (registos[m] == null) {
+                        out.write(anterior.copiarColuna(meses.get(m), coluna));
+                    } else {
+                        escreverColuna(out, coluna, registos[m], nomes);
+                    }
+                }
+            }
+
+            FormatoBinario.escreverRecorrentes(out, recorrentes, nomes);
+            out.flush();
+            c.force(true);
+        }
+
+        if (anterior != null) {
+            anterior.substituir(temporario, caminho);
+        } else {
+            if (modelo.getFonte() != null) modelo.getFonte().fechar(); // Liberta o ficheiro anterior antes de o substituir
+            Files.move(temporario, caminho, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modelo.setFonte(new ColunasFicheiro(caminho));
+        }
+    }
+
+    /**
+     * Escreve os valores de uma coluna para os itens do mês: primeiro as despesas, depois as entradas.
+     */
+    private static void escreverColuna(DataOutputStream out, int coluna, Registo r, FormatoBinario.DicionarioFicheiro nomes) throws IOException {
+        int mes = FormatoBinario.ordinal(r.getData());
+        for (Despesa d : r.getDespesasRegistadas().values()) {
+            switch (coluna) {
+                case COLUNA_ID -> out.writeInt(d.getIdDespesa());
+                case COLUNA_MES -> out.writeInt(mes);
+                case COLUNA_DIA -> out.writeInt((int) d.getDia().toEpochDay());
+                case COLUNA_MONTANTE -> out.writeLong(d.getMontante());
+                case COLUNA_NOME -> out.writeInt(nomes.codigo(d.getCodigoNome()));
+                case COLUNA_FLAGS -> {
+                    byte flags = 0;
+                    if (d instanceof DespesaFixa df) {
+                        flags |= FLAG_FIXA;
+                        if (df.isPago()) flags |= FLAG_PAGA;
+                    }
+                    out.writeByte(flags);
+                }
+                default -> throw new IllegalArgumentException("coluna " + coluna);
+            }
+        }
+        for (Entrada e : r.getEntradas().values()) {
+            switch (coluna) {
+                case COLUNA_ID -> out.writeInt(e.getIdEntrada());
+                case COLUNA_MES -> out.writeInt(mes);
+                case COLUNA_DIA -> out.writeInt((int) e.getDia().toEpochDay());
+                case COLUNA_MONTANTE -> out.writeLong(e.getMontante());
+                case COLUNA_NOME -> out.writeInt(nomes.codigo(e.getCodigoNome()));
+                case COLUNA_FLAGS -> out.writeByte(0);
+                default -> throw new IllegalArgumentException("coluna " + coluna);
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+import model.DicionarioNomes;
+
+/**
+ * Lê extratos bancários (CSV ou OFX) e agrupa os movimentos por mês.
+ *
+ * O ficheiro é lido aos bocados por memory-mapping (nunca está todo em memória), e cada bocado é
+ * partido em pedaços que acabam no fim de um movimento e são lidos em paralelo. Os movimentos
+ * negativos são despesas e os positivos entradas; dentro de cada mês ficam pela ordem do ficheiro.
+ *
+ * No CSV, o separador (";", "," ou tab) e as colunas (data, descrição, valor ou débito/crédito)
+ * são detetados pelo cabeçalho. Sem cabeçalho, as colunas são data, descrição e valor, por esta ordem.
+ */
+public final class ImportadorExtratos {
+
+    private static final long JANELA = 16L << 20; // Bytes mapeados de cada vez
+    private static final long PEDACO = 1L << 20; // Bytes lidos por cada tarefa em paralelo
+    private static final byte[] INICIO_OFX = "<STMTTRN>".getBytes(StandardCharsets.US_ASCII);
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    /**
+     * Movimento de um extrato.
+     *
+     * @param dia Data do movimento.
+     * @param codigoNome Código da descrição no {@link DicionarioNomes}.
+     * @param montante Em cêntimos: negativo numa despesa, positivo numa entrada.
+     */
+    public record Movimento(LocalDate dia, int codigoNome, long montante) {
+    }
+
+    /**
+     * @param porMes Movimentos de cada mês, por ordem de mês.
+     * @param movimentos Número de movimentos lidos.
+     * @param ignoradas Linhas que não se conseguiram ler (ou com valor 0).
+     */
+    public record Resultado(Map<YearMonth, List<Movimento>> porMes, int movimentos, int ignoradas) {
+    }
+
+    private enum Formato { CSV, OFX }
+
+    /**
+     * Colunas de um CSV (-1 se não existir).
+     */
+    private record Colunas(char separador, int data, int descricao, int valor, int debito, int credito) {
+    }
+
+    private ImportadorExtratos() {
+    }
+
+    /**
+     * @param ficheiro Extrato a ler (.csv, ou .ofx/.qfx)
+     * @param progresso Recebe a fração do ficheiro já lida (0 a 1), na thread que chamou este método
+     */
+    public static Resultado ler(Path ficheiro, DoubleConsumer progresso) throws IOException {
+        try (FileChannel c = FileChannel.open(ficheiro, StandardOpenOption.READ)) {
+            long tamanho = c.size();
+            Acumulador total = new Acumulador();
+            if (tamanho == 0) return total.resultado();
+
+            Charset charset = ehUtf8(c, tamanho) ? StandardCharsets.UTF_8 : WINDOWS_1252;
+            Formato formato;
+            Colunas colunas = null;
+            long pos = 0;
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment inicio = c.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(tamanho, 1 << 16), arena);
+                String texto = decodificar(inicio.toArray(ValueLayout.JAVA_BYTE), charset);
+                formato = ehOfx(ficheiro, texto) ? Formato.OFX : Formato.CSV;
+                if (formato == Formato.CSV) {
+                    int fimLinha = texto.indexOf('\n');
+                    String primeira = (fimLinha >= 0 ? texto.substring(0, fimLinha) : texto).strip();
+                    colunas = lerCabecalho(primeira);
+                    if (colunas == null) {
+                        colunas = new Colunas(separador(primeira), 0, 1, 2, -1, -1);
+                    } else {
+                        pos = fimLinha >= 0 ? proximaLinha(inicio, 0, inicio.byteSize()) : tamanho;
+                    }
+                }
+            }
+
+            while (pos < tamanho) {
+                long fimJanela = Math.min(tamanho, pos + JANELA);
+                try (Arena arena = Arena.ofShared()) {
+                    MemorySegment s = c.map(FileChannel.MapMode.READ_ONLY, pos, fimJanela - pos, arena);
+
+                    // O último movimento da janela pode estar cortado: fica para a janela seguinte
+                    long limite = s.byteSize();
+                    if (fimJanela < tamanho) {
+                        long ultimo = ultimoInicio(s, formato);
+                        if (ultimo > 0) limite = ultimo;
+                    }
+
+                    long[] cortes = cortes(s, limite, formato);
+                    Formato f = formato;
+                    Colunas cols = colunas;
+                    List<Acumulador> partes = IntStream.range(0, cortes.length - 1).parallel()
+                            .mapToObj(i -> lerPedaco(s, cortes[i], cortes[i + 1], f, cols, charset))
+                            .toList();
+                    for (Acumulador a : partes) total.juntar(a);
+                    pos += limite;
+                }
+                progresso.accept((double) pos / tamanho);
+            }
+            return total.resultado();
+        }
+    }
+
+    private static boolean ehOfx(Path ficheiro, String inicio) {
+        String nome = ficheiro.getFileName().toString().toLowerCase(Locale.ROOT);
+        return nome.endsWith(".ofx") || nome.endsWith(".qfx") || inicio.contains("OFXHEADER") || inicio.contains("<OFX>");
+    }
+
+    // ==========================================
+    // PEDAÇOS
+    // ==========================================
+
+    /**
+     * @return Início do último movimento da janela, ou 0 se não houver nenhum depois do início.
+     */
+    private static long ultimoInicio(MemorySegment s, Formato formato) {
+        long tamanho = s.byteSize();
+        if (formato == Formato.CSV) {
+            for (long i = tamanho - 1; i >= 0; i--) {
+                if (s.get(ValueLayout.JAVA_BYTE, i) == '\n') return i + 1;
+            }
+            return 0;
+        }
+        for (long i = tamanho - INICIO_OFX.length; i > 0; i--) {
+            if (comeca(s, i, INICIO_OFX)) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Parte [0, limite) em pedaços de cerca de {@link #PEDACO} bytes, cada um a começar num movimento.
+     */
+    private static long[] cortes(MemorySegment s, long limite, Formato formato) {
+        List<Long> cortes = new ArrayList<>();
+        cortes.add(0L);
+        long pos = PEDACO;
+        while (pos < limite) {
+            long corte = formato == Formato.CSV ? proximaLinha(s, pos, limite) : proximoOfx(s, pos, limite);
+            if (corte >= limite) break;
+            cortes.add(corte);
+            pos = corte + PEDACO;
+        }
+        cortes.add(limite);
+        return cortes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long proximaLinha(MemorySegment s, long pos, long limite) {
+        for (long i = pos; i < limite; i++) {
+            if (s.get(ValueLayout.JAVA_BYTE, i) == '\n') return i + 1;
+        }
+        return limite;
+    }
+
+    private static long proximoOfx(MemorySegment s, long pos, long limite) {
+        for (long i = pos; i + INICIO_OFX.length <= limite; i++) {
+            if (comeca(s, i, INICIO_OFX)) return i;
+        }
+        return limite;
+    }
+
+    private static boolean comeca(MemorySegment s, long pos, byte[] marca) {
+        for (int j = 0; j < marca.length; j++) {
+            if (s.get(ValueLayout.JAVA_BYTE, pos + j) != marca[j]) return false;
+        }
+        return true;
+    }
+
+    private static Acumulador lerPedaco(MemorySegment s, long de, long ate, Formato formato, Colunas colunas, Charset charset) {
+        Acumulador a = new Acumulador();
+        String texto = decodificar(s.asSlice(de, ate - de).toArray(ValueLayout.JAVA_BYTE), charset);
+        if (formato == Formato.CSV) {
+            lerCsv(texto, colunas, a);
+        } else {
+            lerOfx(texto, a);
+        }
+        return a;
+    }
+
+    private static String decodificar(byte[] bytes, Charset charset) {
+        String texto = new String(bytes, charset);
+        return texto.startsWith("\uFEFF") ? texto.substring(1) : texto; // BOM no início do ficheiro
+    }
+
+    /**
+     * Os extratos vêm em UTF-8 ou, de alguns bancos, em Windows-1252. Decide-se uma vez pelo ficheiro
+     * inteiro, antes de o partir, para a mesma descrição nunca ser lida de duas maneiras.
+     *
+     * @return true se o ficheiro todo é UTF-8 válido
+     */
+    private static boolean ehUtf8(FileChannel c, long tamanho) throws IOException {
+        int faltam = 0; // Bytes de continuação que ainda faltam ao carácter atual
+        int min = 0x80, max = 0xBF; // Limites do próximo byte de continuação
+        for (long pos = 0; pos < tamanho; pos += JANELA) {
+            long fimJanela = Math.min(tamanho, pos + JANELA);
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment s = c.map(FileChannel.MapMode.READ_ONLY, pos, fimJanela - pos, arena);
+                long n = s.byteSize();
+                for (long i = 0; i < n; i++) {
+                    if (faltam == 0) {
+                        // Texto ASCII: 8 bytes de cada vez
+                        while (i + 8 <= n && (s.get(ValueLayout.JAVA_LONG_UNALIGNED, i) & 0x8080808080808080L) == 0) i += 8;
+                        if (i == n) break;
+                    }
+                    int b = s.get(ValueLayout.JAVA_BYTE, i) & 0xFF;
+                    if (faltam > 0) {
+                        if (b < min || b > max) return false;
+                        faltam--;
+                        min = 0x80;
+                        max = 0xBF;
+                    } else if (b >= 0x80) {
+                        // Os mesmos limites do descodificador, que trocaria o resto por U+FFFD
+                        if (b >= 0xC2 && b <= 0xDF) faltam = 1;
+                        else if (b >= 0xE0 && b <= 0xEF) faltam = 2;
+                        else if (b >= 0xF0 && b <= 0xF4) faltam = 3;
+                        else return false;
+                        if (b == 0xE0) min = 0xA0;
+                        else if (b == 0xED) max = 0x9F;
+                        else if (b == 0xF0) min = 0x90;
+                        else if (b == 0xF4) max = 0x8F;
+                    }
+                }
+            }
+        }
+        return faltam == 0;
+    }
+
+    // ==========================================
+    // CSV
+    // ==========================================
+
+    /**
+     * @return As colunas do cabeçalho, ou null se a linha não for um cabeçalho conhecido.
+     */
+    private static Colunas lerCabecalho(String linha) {
+        char sep = separador(linha);
+        List<String> nomes = campos(linha, sep);
+        try {
+            dia(nomes.get(0));
+            return null; // Começa por uma data: é já um movimento
+        } catch (RuntimeException e) {
+            // Não é uma data: pode ser o cabeçalho
+        }
+        int data = -1, descricao = -1, valor = -1, debito = -1, credito = -1;
+        for (int i = 0; i < nomes.size(); i++) {
+            String n = normalizar(nomes.get(i));
+            if (n.contains("data") || n.contains("date")) {
+                if (data < 0) data = i; // "Data Valor" é uma data, não um valor
+            } else if (n.contains("debito") || n.contains("debit")) {
+                debito = i;
+            } else if (n.contains("credito") || n.contains("credit")) {
+                credito = i;
+            } else if (n.contains("saldo") || n.contains("balance")) {
+                continue;
+            } else if (n.contains("valor") || n.contains("montante") || n.contains("amount") || n.contains("importe") || n.contains("quantia")) {
+                if (valor < 0) valor = i;
+            } else if (n.contains("descri") || n.contains("nome") || n.contains("name") || n.contains("memo") || n.contains("movimento") || n.contains("concept")) {
+                if (descricao < 0) descricao = i;
+            }
+        }
+        if (data < 0 || (valor < 0 && debito < 0 && credito < 0)) return null;
+        return new Colunas(sep, data, descricao, valor, debito, credito);
+    }
+
+    private static String normalizar(String s) {
+        return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT).strip();
+    }
+
+    private static char separador(String linha) {
+        int pv = 0, virgulas = 0, tabs = 0;
+        boolean aspas = false;
+        for (int i = 0; i < linha.length(); i++) {
+            char ch = linha.charAt(i);
+            if (ch == '"') aspas = !aspas;
+            else if (aspas) continue;
+            else if (ch == ';') pv++;
+            else if (ch == ',') virgulas++;
+            else if (ch == '\t') tabs++;
+        }
+        if (tabs > pv && tabs > virgulas) return '\t';
+        return pv >= virgulas && pv > 0 ? ';' : ',';
+    }
+
+    private static List<String> campos(String linha, char sep) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        boolean aspas = false;
+        for (int i = 0; i < linha.length(); i++) {
+            char ch = linha.charAt(i);
+            if (ch == '"') {
+                if (aspas && i + 1 < linha.length() && linha.charAt(i + 1) == '"') {
+                    atual.append('"'); // Aspas dentro de um campo entre aspas
+                    i++;
+                } else {
+                    aspas = !aspas;
+                }
+            } else if (ch == sep && !aspas) {
+                campos.add(atual.toString().strip());
+                atual.setLength(0);
+            } else {
+                atual.append(ch);
+            }
+        }
+        campos.add(atual.toString().strip());
+        return campos;
+    }
+
+    private static void lerCsv(String texto, Colunas colunas, Acumulador a) {
+        int inicio = 0;
+        while (inicio < texto.length()) {
+            int fim = texto.indexOf('\n', inicio);
+            if (fim < 0) fim = texto.length();
+            String linha = texto.substring(inicio, fim).strip();
+            inicio = fim + 1;
+            if (linha.isEmpty()) continue;
+
+            List<String> c = campos(linha, colunas.separador());
+            try {
+                LocalDate dia = dia(c.get(colunas.data()));
+                long montante;
+                if (colunas.valor() >= 0) {
+                    montante = centimos(c.get(colunas.valor()));
+                } else {
+                    String debito = colunas.debito() >= 0 && colunas.debito() < c.size() ? c.get(colunas.debito()) : "";
+                    String credito = colunas.credito() >= 0 && colunas.credito() < c.size() ? c.get(colunas.credito()) : "";
+                    long saida = debito.isEmpty() ? 0 : Math.abs(centimos(debito));
+                    montante = saida != 0 ? -saida : Math.abs(centimos(credito));
+                }
+                String nome = colunas.descricao() >= 0 && colunas.descricao() < c.size() ? c.get(colunas.descricao()) : "";
+                a.adicionar(dia, nome, montante);
+            } catch (RuntimeException e) {
+                a.ignoradas++; // Linha sem data ou valor (ex: totais no fim do extrato)
+            }
+        }
+    }
+
+    // ==========================================
+    // OFX
+    // ==========================================
+
+    private static void lerOfx(String texto, Acumulador a) {
+        int inicio = texto.indexOf("<STMTTRN>");
+        while (inicio >= 0) {
+            int seguinte = texto.indexOf("<STMTTRN>", inicio + 1);
+            int fim = texto.indexOf("</STMTTRN>", inicio);
+            if (fim < 0 || (seguinte >= 0 && seguinte < fim)) fim = seguinte >= 0 ? seguinte : texto.length();
+            String t = texto.substring(inicio, fim);
+            inicio = seguinte;
+
+            try {
+                String nome = campoOfx(t, "NAME");
+                String memo = campoOfx(t, "MEMO");
+                if (nome == null || nome.isEmpty()) nome = memo;
+                a.adicionar(dia(campoOfx(t, "DTPOSTED")), nome != null ? nome : "", centimos(campoOfx(t, "TRNAMT")));
+            } catch (RuntimeException e) {
+                a.ignoradas++;
+            }
+        }
+    }
+
+    /**
+     * @return O valor da etiqueta (em SGML acaba na etiqueta seguinte ou no fim da linha), ou null.
+     */
+    private static String campoOfx(String t, String etiqueta) {
+        int i = t.indexOf("<" + etiqueta + ">");
+        if (i < 0) return null;
+        i += etiqueta.length() + 2;
+        int fim = i;
+        while (fim < t.length() && t.charAt(fim) != '<' && t.charAt(fim) != '\n' && t.charAt(fim) != '\r') fim++;
+        return t.substring(i, fim).strip();
+    }
+
+    // ==========================================
+    // VALORES
+    // ==========================================
+
+    /**
+     * Lê "2024-01-31", "31/01/2024", "31-01-24" ou "20240131[120000...]" (OFX).
+     */
+    static LocalDate dia(String texto) {
+        String t = texto.strip();
+        if (t.length() >= 8 && t.chars().limit(8).allMatch(Character::isDigit)) {
+            return LocalDate.of(Integer.parseInt(t.substring(0, 4)), Integer.parseInt(t.substring(4, 6)), Integer.parseInt(t.substring(6, 8)));
+        }
+        String[] partes = t.split("\\D+");
+        if (partes.length < 3) throw new DateTimeException("Data inválida: " + texto);
+        if (partes[0].length() == 4) {
+            return LocalDate.of(Integer.parseInt(partes[0]), Integer.parseInt(partes[1]), Integer.parseInt(partes[2]));
+        }
+        int ano = Integer.parseInt(partes[2]);
+        return LocalDate.of(ano < 100 ? 2000 + ano : ano, Integer.parseInt(partes[1]), Integer.parseInt(partes[0]));
+    }
+
+    /**
+     * Lê um valor em cêntimos sem passar por double: "-1.234,56", "1234.5", "(12,30)", "12,30-", "€ 5".
+     * O separador decimal é o último "," ou "." com no máximo 2 dígitos depois; os outros são de milhares.
+     */
+    static long centimos(String texto) {
+        String t = texto.replace("€", "").replace("EUR", "").replace(" ", "").replace("\u00A0", "").replace("'", "");
+        boolean negativo = false;
+        if (t.startsWith("(") && t.endsWith(")")) {
+            negativo = true;
+            t = t.substring(1, t.length() - 1);
+        }
+        if (t.startsWith("-") || t.startsWith("+")) {
+            negativo ^= t.charAt(0) == '-';
+            t = t.substring(1);
+        } else if (t.endsWith("-")) {
+            negativo = !negativo;
+            t = t.substring(0, t.length() - 1);
+        }
+
+        int separador = Math.max(t.lastIndexOf(','), t.lastIndexOf('.'));
+        int decimal = separador >= 0 && t.length() - separador - 1 <= 2 ? separador : t.length();
+
+        long inteiros = 0;
+        int digitos = 0;
+        for (int i = 0; i < decimal; i++) {
+            char ch = t.charAt(i);
+            if (ch == '.' || ch == ',') continue;
+            if (!Character.isDigit(ch)) throw new NumberFormatException("Valor inválido: " + texto);
+            inteiros = Math.addExact(Math.multiplyExact(inteiros, 10), ch - '0');
+            digitos++;
+        }
+        long centimos = 0;
+        for (int i = decimal + 1, casas = 0; casas < 2; i++, casas++) {
+            char ch = i < t.length() ? t.charAt(i) : '0';
+            if (!Character.isDigit(ch)) throw new NumberFormatException("Valor inválido: " + texto);
+            centimos = centimos * 10 + (ch - '0');
+            if (i < t.length()) digitos++;
+        }
+        if (digitos == 0) throw new NumberFormatException("Valor inválido: " + texto);
+
+        long valor = Math.addExact(Math.multiplyExact(inteiros, 100), centimos);
+        return negativo ? -valor : valor;
+    }
+
+    // ==========================================
+    // ACUMULAÇÃO
+    // ==========================================
+
+    /**
+     * Movimentos de um pedaço, já separados por mês. Cada pedaço guarda os códigos dos nomes que já viu,
+     * para não ir ao dicionário partilhado em cada linha.
+     */
+    private static final class Acumulador {
+        final Map<YearMonth, List<Movimento>> porMes = new TreeMap<>();
+        final Map<String, Integer> codigos = new HashMap<>();
+        int movimentos;
+        int ignoradas;
+
+        void adicionar(LocalDate dia, String nome, long montante) {
+            if (montante == 0) {
+                ignoradas++;
+                return;
+            }
+            String limpo = nome.strip().replaceAll("\\s+", " ");
+            if (limpo.isEmpty()) limpo = montante < 0 ? "Despesa sem nome" : "Entrada sem nome";
+            int codigo = codigos.computeIfAbsent(limpo, DicionarioNomes::codigo);
+            porMes.computeIfAbsent(YearMonth.from(dia), m -> new ArrayList<>()).add(new Movimento(dia, codigo, montante));
+            movimentos++;
+        }
+
+        void juntar(Acumulador outro) {
+            for (Map.Entry<YearMonth, List<Movimento>> e : outro.porMes.entrySet()) {
+                porMes.computeIfAbsent(e.getKey(), m -> new ArrayList<>()).addAll(e.getValue());
+            }
+            movimentos += outro.movimentos;
+            ignoradas += outro.ignoradas;
+        }
+
+        Resultado resultado() {
+            return new Resultado(porMes, movimentos, ignoradas);
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import model.Alteracao;
+import model.MoneyCount;
+
+/**
+ * Journal append-only das alterações ao modelo.
+ *
+ * Cada alteração é gravada como um registo binário [tamanho][crc32][dados] no fim do ficheiro.
+ * O fsync é feito em grupo por uma thread de fundo, e a compactação (ver {@link AutoGuardar})
+ * junta o journal ao snapshot do modelo. Carregar = ler o snapshot + reproduzir o journal.
+ * Os montantes são gravados em cêntimos e as adições levam o dia do item.
+ */
+public class Journal {
+
+    private static final int MAGIA = 0x4D434A31; // "MCJ1"
+    private static final long INTERVALO_COMMIT_MS = 200;
+    private static final int TAMANHO_BLOCO = 64 * 1024; // Leitura do journal
+    private static final int MAX_REGISTO = 16 * 1024 * 1024; // Um tamanho maior só pode ser lixo no fim do ficheiro
+    private static final int MAX_TENTATIVAS_LEITURA = 5;
+
+    private final Path ficheiro;
+    private final Path ficheiroAntigo;
+    private final Path ficheiroNovo;
+    private final String ficheiroModelo;
+    private final ScheduledExecutorService commits;
+    private final Object rotacao = new Object(); // Só um corte é concluído de cada vez
+    private FileChannel canal;
+    private FileChannel canalAntigo; // Journal cortado que ainda não passou para .old
+    private boolean pendente;
+
+    /**
+     * Abre (ou cria) o journal dentro de ../resources/
+     *
+     * @param nomeFicheiro Nome do ficheiro do journal
+     * @param ficheiroModelo Nome do snapshot onde o journal é compactado
+     */
+    public Journal(String nomeFicheiro, String ficheiroModelo) throws IOException {
+        File pasta = new File(Serializer.BASE_PATH);
+        if (!pasta.exists()) {
+            pasta.mkdirs();
+        }
+
+        this.ficheiro = new File(pasta, nomeFicheiro).toPath();
+        this.ficheiroAntigo = new File(pasta, nomeFicheiro + ".old").toPath();
+        this.ficheiroNovo = new File(pasta, nomeFicheiro + ".novo").toPath();
+        this.ficheiroModelo = ficheiroModelo;
+        if (Files.exists(ficheiroNovo)) {
+            moverCorte(); // O programa fechou a meio de um corte
+        }
+        this.canal = abrirCanal(ficheiro);
+
+        this.commits = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-commit");
+            t.setDaemon(true);
+            return t;
+        });
+        this.commits.scheduleWithFixedDelay(this::commit, INTERVALO_COMMIT_MS, INTERVALO_COMMIT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reproduz sobre o modelo todas as alterações ainda não compactadas.
+     * Um registo incompleto no fim (escrita interrompida) é descartado.
+     *
+     * @param modelo Modelo lido do snapshot
+     * @return Número de alterações aplicadas
+     */
+    public synchronized int reproduzir(MoneyCount modelo) {
+        int aplicadas = 0;
+        try {
+            if (Files.exists(ficheiroAntigo)) {
+                for (Alteracao a : lerAlteracoes(ficheiroAntigo)) {
+                    a.aplicar(modelo);
+                    aplicadas++;
+                }
+            }
+
+            List<Alteracao> alteracoes = new ArrayList<>();
+            long fimValido = lerAlteracoes(canal, alteracoes);
+            for (Alteracao a : alteracoes) {
+                a.aplicar(modelo);
+                aplicadas++;
+            }
+            if (fimValido < canal.size()) {
+                canal.truncate(fimValido);
+            }
+            canal.position(canal.size());
+        } catch (IOException e) {
+            System.err.println("⚠️ Erro ao reproduzir journal " + ficheiro.getFileName() + ": " + e.getMessage());
+        }
+        if (aplicadas > 0) {
+            System.out.println("📂 " + aplicadas + " alterações reproduzidas de: " + ficheiro.toAbsolutePath());
+        }
+        return aplicadas;
+    }
+
+    /**
+     * Lê o snapshot e reproduz o journal sem escrever nada, com o programa possivelmente aberto.
+     * Se entretanto houver uma compactação (o journal é cortado, o snapshot regravado e o .old apagado),
+     * o snapshot lido e os journals reproduzidos podem não corresponder: nesse caso lê-se tudo outra vez.
+     *
+     * @param ficheiroModelo Nome do snapshot dentro de ../resources/
+     * @param nomeFicheiro Nome do ficheiro do journal dentro de ../resources/
+     * @return O modelo com as alterações do journal, ou null se o snapshot não foi lido
+     */
+    public static MoneyCount lerSoLeitura(String ficheiroModelo, String nomeFicheiro) {
+        for (int tentativa = 1; ; tentativa++) {
+            List<Object> antes = estadoFicheiros(ficheiroModelo, nomeFicheiro);
+            MoneyCount modelo = Serializer.lerSoLeitura(ficheiroModelo);
+            if (modelo == null) return null;
+            reproduzirSoLeitura(nomeFicheiro, modelo);
+            if (antes.equals(estadoFicheiros(ficheiroModelo, nomeFicheiro))) {
+                return modelo;
+            }
+            if (tentativa == MAX_TENTATIVAS_LEITURA) {
+                System.err.println("⚠️ O journal " + nomeFicheiro + " foi compactado durante a leitura; os dados podem estar incompletos");
+                return modelo;
+            }
+            if (modelo.getFonte() != null) modelo.getFonte().fechar();
+        }
+    }
+
+    /**
+     * @return Identidade dos ficheiros que uma compactação substitui: muda se algum for criado, apagado ou
+     *         trocado por outro (todos são substituídos por rename). Um journal que só cresceu conta como o mesmo.
+     */
+    private static List<Object> estadoFicheiros(String ficheiroModelo, String nomeFicheiro) {
+        File pasta = new File(Serializer.BASE_PATH);
+        List<Object> estado = new ArrayList<>();
+        for (String nome : new String[] { ficheiroModelo, nomeFicheiro + ".old", nomeFicheiro, nomeFicheiro + ".novo" }) {
+            try {
+                BasicFileAttributes atributos = Files.readAttributes(new File(pasta, nome).toPath(), BasicFileAttributes.class);
+                estado.add(atributos.fileKey() != null ? atributos.fileKey() : atributos.creationTime());
+            } catch (IOException e) {
+                estado.add(null); // Não existe
+            }
+        }
+        return estado;
+    }
+
+    /**
+     * Reproduz um journal sobre o modelo sem o abrir para escrita (ex: para exportar com o programa aberto).
+     * Nada é cortado; um registo incompleto no fim é só ignorado.
+     *
+     * @param nomeFicheiro Nome do ficheiro do journal dentro de ../resources/
+     * @param modelo Modelo lido do snapshot
+     * @return Número de alterações aplicadas
+     */
+    public static int reproduzirSoLeitura(String nomeFicheiro, MoneyCount modelo) {
+        int aplicadas = 0;
+        File pasta = new File(Serializer.BASE_PATH);
+        for (File f : new File[] { new File(pasta, nomeFicheiro + ".old"), new File(pasta, nomeFicheiro),
+                new File(pasta, nomeFicheiro + ".novo") }) {
+            if (!f.exists()) continue;
+            try (FileChannel c = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                List<Alteracao> alteracoes = new ArrayList<>();
+                lerAlteracoes(c, alteracoes);
+                for (Alteracao alteracao : alteracoes) {
+                    alteracao.aplicar(modelo);
+                    aplicadas++;
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Erro ao reproduzir journal " + f.getName() + ": " + e.getMessage());
+            }
+        }
+        return aplicadas;
+    }
+
+    /**
+     * Acrescenta uma alteração ao journal. Fica em disco no próximo commit de grupo.
+     *
+     * @param a Alteração a gravar
+     */
+    public synchronized void registar(Alteracao a) {
+        try {
+            escreverRegisto(canal, a);
+            pendente = true;
+        } catch (IOException e) {
+            System.err.println("⚠️ Erro ao escrever no journal " + ficheiro.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Acrescenta várias alterações de uma vez (ex: uma importação), numa só escrita.
+     *
+     * @param alteracoes Alterações a gravar, por ordem
+     */
+    public synchronized void registarTodas(List<Alteracao> alteracoes) {
+        if (alteracoes.isEmpty()) return;
+        try {
+            ByteBuffer[] registos = new ByteBuffer[alteracoes.size()];
+            for (int i = 0; i < registos.length; i++) {
+                registos[i] = emRegisto(alteracoes.get(i));
+            }
+            long porEscrever = 0;
+            for (ByteBuffer r : registos) porEscrever += r.remaining();
+            while (porEscrever > 0) {
+                porEscrever -= canal.write(registos);
+            }
+            pendente = true;
+        } catch (IOException e) {
+            System.err.println("⚠️ Erro ao escrever no journal " + ficheiro.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Junta o journal ao snapshot: corta o ficheiro atual, grava o modelo e
+     * apaga o journal antigo. Se falhar a meio, a reprodução volta a ler ambos.
+     *
+     * @param modelo Modelo com todas as alterações já aplicadas
+     * @return true se compactou com sucesso
+     */
+    public boolean compactar(MoneyCount modelo) {
+        return cortar() && concluirCorte() && concluirCompactacao(modelo);
+    }
+
+    /**
+     * Primeira metade da compactação: a partir daqui as alterações vão para um journal novo (.novo).
+     * Só troca de canal, sem fsync nem renomear ficheiros, por isso pode ser chamada sob o lock
+     * do controlador, no mesmo ponto em que se tira o instantâneo do modelo.
+     * O resto fica para {@link #concluirCorte()}, já fora do lock.
+     *
+     * @return true se o journal foi cortado (false se o corte anterior ainda não foi concluído)
+     */
+    public synchronized boolean cortar() {
+        if (canalAntigo != null) return false;
+        try {
+            FileChannel novo = criarCanal(ficheiroNovo);
+            canalAntigo = canal;
+            canal = novo;
+            pendente = true; // O cabeçalho do ficheiro novo fica em disco no próximo commit
+            return true;
+        } catch (IOException e) {
+            System.err.println("⚠️ Erro ao cortar journal " + ficheiro.getFileName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Acaba o corte: sincroniza e fecha o journal cortado, passa-o para .old e o .novo toma o lugar dele.
+     * As escritas não esperam por isto, já vão para o ficheiro novo.
+     * Um corte que tenha falhado a meio é retomado na chamada seguinte.
+     *
+     * @return true se não ficou nenhum corte por concluir
+     */
+    public boolean concluirCorte() {
+        synchronized (rotacao) {
+            FileChannel antigo;
+            synchronized (this) {
+                antigo = canalAntigo;
+            }
+            if (antigo == null) return true;
+            try {
+                if (antigo.isOpen()) {
+                    antigo.force(false);
+                    antigo.close();
+                }
+                moverCorte();
+                synchronized (this) {
+                    canalAntigo = null;
+                }
+                return true;
+            } catch (IOException e) {
+                System.err.println("⚠️ Erro ao rodar journal " + ficheiro.getFileName() + ": " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Segunda metade da compactação: grava o instantâneo e apaga o journal cortado.
+     * Não bloqueia novas alterações enquanto o ficheiro está a ser escrito.
+     *
+     * @param instantaneo Modelo tal como estava quando o journal foi cortado
+     * @return true se compactou com sucesso
+     */
+    public boolean concluirCompactacao(MoneyCount instantaneo) {
+        if (!Serializer.guardar(ficheiroModelo, instantaneo)) {
+            return false;
+        }
+
+        synchronized (rotacao) {
+            try {
+                Files.deleteIfExists(ficheiroAntigo);
+                return true;
+            } catch (IOException e) {
+                System.err.println("⚠️ Erro ao apagar journal " + ficheiroAntigo.getFileName() + ": " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Faz o último fsync e fecha o ficheiro.
+     */
+    public void fechar() {
+        commits.shutdown();
+        try {
+            commits.awaitTermination(1, TimeUnit.SECONDS); // Um commit em curso acaba antes de o canal fechar
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        concluirCorte();
+        synchronized (this) {
+            if (!canal.isOpen()) return;
+            try {
+                canal.force(false);
+                canal.close();
+            } catch (IOException e) {
+                System.err.println("⚠️ Erro ao fechar journal " + ficheiro.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Commit de grupo: o fsync é feito fora do monitor, para as escritas novas não esperarem pelo disco.
+     */
+    private void commit() {
+        FileChannel c;
+        synchronized (this) {
+            if (!pendente || !canal.isOpen()) return;
+            c = canal;
+            pendente = false;
+        }
+        try {
+            c.force(false);
+        } catch (ClosedChannelException e) {
+            // O journal foi cortado ou fechado entretanto: o canal antigo já foi sincronizado antes de fechar
+        } catch (IOException e) {
+            synchronized (this) {
+                if (c == canal) pendente = true; // Volta a tentar no próximo commit
+            }
+            System.err.println("⚠️ Erro ao sincronizar journal " + ficheiro.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Passa o journal cortado para .old (ou junta-o ao .old que lá esteja) e o .novo para o lugar dele.
+     * As alterações do .old continuam a ser reproduzidas até o snapshot ficar gravado.
+     * Se parar a meio, repetir continua de onde ficou.
+     */
+    private void moverCorte() throws IOException {
+        if (Files.exists(ficheiro)) {
+            if (Files.exists(ficheiroAntigo)) {
+                // Compactação anterior falhou: o .old ainda não está no snapshot, junta-se-lhe o cortado
+                try (FileChannel antigo = FileChannel.open(ficheiroAntigo, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                     FileChannel cortado = FileChannel.open(ficheiro, StandardOpenOption.READ)) {
+                    long pos = Integer.BYTES;
+                    while (pos < cortado.size()) {
+                        pos += cortado.transferTo(pos, cortado.size() - pos, antigo);
+                    }
+                    antigo.force(false);
+                }
+                Files.delete(ficheiro);
+            } else {
+                Files.move(ficheiro, ficheiroAntigo, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        Files.move(ficheiroNovo, ficheiro, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void escreverRegisto(FileChannel c, Alteracao a) throws IOException {
+        ByteBuffer registo = emRegisto(a);
+        while (registo.hasRemaining()) {
+            c.write(registo);
+        }
+    }
+
+    /**
+     * @return O registo [tamanho][crc32][dados] da alteração, pronto a escrever.
+     */
+    private static ByteBuffer emRegisto(Alteracao a) {
+        ByteBuffer dados = codificar(a);
+        CRC32 crc = new CRC32();
+        crc.update(dados.duplicate());
+
+        ByteBuffer registo = ByteBuffer.allocate(8 + dados.remaining());
+        registo.putInt(dados.remaining());
+        registo.putInt((int) crc.getValue());
+        registo.put(dados);
+        return registo.flip();
+    }
+
+    private static FileChannel abrirCanal(Path caminho) throws IOException {
+        FileChannel c = FileChannel.open(caminho, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (c.size() == 0) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIA).flip();
+            c.write(cabecalho);
+            c.force(false);
+        }
+        c.position(c.size());
+        return c;
+    }
+
+    /**
+     * Cria um journal vazio sem esperar pelo disco (o cabeçalho é sincronizado com o primeiro commit).
+     */
+    private static FileChannel criarCanal(Path caminho) throws IOException {
+        FileChannel c = FileChannel.open(caminho, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        c.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIA).flip());
+        return c;
+    }
+
+    private static List<Alteracao> lerAlteracoes(Path caminho) throws IOException {
+        List<Alteracao> alteracoes = new ArrayList<>();
+        try (FileChannel c = FileChannel.open(caminho, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fimValido = lerAlteracoes(c, alteracoes);
+            if (fimValido < c.size()) {
+                c.truncate(fimValido);
+            }
+        }
+        return alteracoes;
+    }
+
+    /**
+     * Lê os registos válidos do canal para a lista, aos blocos (o journal pode ser maior do que a memória).
+     *
+     * @return Posição a seguir ao último registo válido
+     */
+    private static long lerAlteracoes(FileChannel c, List<Alteracao> destino) throws IOException {
+        long tamanhoFicheiro = c.size();
+        ByteBuffer bloco = ByteBuffer.allocate(TAMANHO_BLOCO).limit(0);
+        long lido = recarregar(c, bloco, 0); // Posição no ficheiro a seguir ao que está no bloco
+
+        int magia = bloco.remaining() < Integer.BYTES ? 0 : bloco.getInt();
+        if (magia != MAGIA) {
+            throw new IOException("cabeçalho de journal inválido");
+        }
+
+        long fimValido = Integer.BYTES;
+        while (true) {
+            if (bloco.remaining() < 8) lido = recarregar(c, bloco, lido);
+            if (bloco.remaining() < 8) break;
+            int tamanho = bloco.getInt();
+            int crcEsperado = bloco.getInt();
+            if (tamanho < 0 || tamanho > MAX_REGISTO || tamanho > tamanhoFicheiro - fimValido - 8) break;
+
+            if (bloco.remaining() < tamanho) {
+                if (tamanho > bloco.capacity()) { // Só um nome enorme passa do tamanho do bloco
+                    ByteBuffer maior = ByteBuffer.allocate(tamanho);
+                    bloco = maior.put(bloco).flip();
+                }
+                lido = recarregar(c, bloco, lido);
+                if (bloco.remaining() < tamanho) break;
+            }
+
+            ByteBuffer dados = bloco.slice(bloco.position(), tamanho);
+            CRC32 crc = new CRC32();
+            crc.update(dados.duplicate());
+            if ((int) crc.getValue() != crcEsperado) break;
+
+            destino.add(descodificar(dados));
+            bloco.position(bloco.position() + tamanho);
+            fimValido += 8 + tamanho;
+        }
+        return fimValido;
+    }
+
+    /**
+     * Junta ao que falta ler do bloco os bytes seguintes do ficheiro, até o encher ou chegar ao fim.
+     *
+     * @return Posição no ficheiro a seguir ao último byte lido
+     */
+    private static long recarregar(FileChannel c, ByteBuffer bloco, long posicao) throws IOException {
+        bloco.compact();
+        while (bloco.hasRemaining()) {
+            int n = c.read(bloco, posicao);
+            if (n < 0) break;
+            posicao += n;
+        }
+        bloco.flip();
+        return posicao;
+    }
+
+    private static ByteBuffer codificar(Alteracao a) {
+        byte[] nome = a.nome() == null ? null : a.nome().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = ByteBuffer.allocate(1 + 4 + 1 + 4 + 8 + 1 + 8 + 4 + (nome == null ? 0 : nome.length));
+        b.put((byte) a.tipo().ordinal());
+        b.putInt(a.mes().getYear());
+        b.put((byte) a.mes().getMonthValue());
+        b.putInt(a.id());
+        b.putLong(a.valor());
+        b.put((byte) (a.flag() ? 1 : 0));
+        b.putLong(a.dia());
+        b.putInt(nome == null ? -1 : nome.length);
+        if (nome != null) b.put(nome);
+        return b.flip();
+    }
+
+    private static Alteracao descodificar(ByteBuffer b) {
+        Alteracao.Tipo tipo = Alteracao.Tipo.values()[b.get()];
+        YearMonth mes = YearMonth.of(b.getInt(), b.get());
+        int id = b.getInt();
+        long valor = b.getLong();
+        boolean flag = b.get() != 0;
+        long dia = b.getLong();
+        int tamanhoNome = b.getInt();
+        String nome = null;
+        if (tamanhoNome >= 0) {
+            byte[] bytes = new byte[tamanhoNome];
+            b.get(bytes);
+            nome = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new Alteracao(tipo, mes, id, nome, valor, flag, dia);
+    }
+}
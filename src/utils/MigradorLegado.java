@@ -0,0 +1,330 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Despesa;
+import model.DespesaFixa;
+import model.Dinheiro;
+import model.Entrada;
+import model.MoneyCount;
+import model.Registo;
+
+/**
+ * Migração única dos ficheiros antigos (serialização Java de MoneyCount).
+ *
+ * O stream é interpretado diretamente, sem carregar classes, para aceitar qualquer
+ * versão antiga do modelo: campos em falta ficam com o valor por omissão e
+ * campos que já não existem são ignorados.
+ */
+class MigradorLegado {
+
+    private static final short MAGIA = (short) 0xACED;
+    private static final int HANDLE_BASE = 0x7E0000;
+
+    private static final int TC_NULL = 0x70;
+    private static final int TC_REFERENCE = 0x71;
+    private static final int TC_CLASSDESC = 0x72;
+    private static final int TC_OBJECT = 0x73;
+    private static final int TC_STRING = 0x74;
+    private static final int TC_ARRAY = 0x75;
+    private static final int TC_BLOCKDATA = 0x77;
+    private static final int TC_ENDBLOCKDATA = 0x78;
+    private static final int TC_RESET = 0x79;
+    private static final int TC_BLOCKDATALONG = 0x7A;
+    private static final int TC_ENUM = 0x7E;
+
+    private static final int SC_WRITE_METHOD = 0x01;
+    private static final int SC_EXTERNALIZABLE = 0x04;
+    private static final int SC_BLOCK_DATA = 0x08;
+
+    // Tipos usados por java.time.Ser
+    private static final int SER_LOCAL_DATE = 3;
+    private static final int SER_YEAR_MONTH = 12;
+
+    private record Campo(char tipo, String nome) {}
+
+    private static final class Descritor {
+        String nome;
+        int flags;
+        List<Campo> campos = new ArrayList<>();
+        Descritor superclasse;
+    }
+
+    private static final class Objeto {
+        Descritor classe;
+        Map<String, Object> campos = new HashMap<>();
+        List<Object> anotacoes = new ArrayList<>();
+    }
+
+    private final DataInputStream in;
+    private final List<Object> handles = new ArrayList<>();
+
+    private MigradorLegado(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Verifica se o ficheiro está no formato antigo.
+     */
+    static boolean eLegado(Path caminho) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(caminho))) {
+            return in.readShort() == MAGIA;
+        } catch (java.io.EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lê um ficheiro antigo e converte-o para o modelo atual.
+     */
+    static MoneyCount migrar(Path caminho) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(caminho))) {
+            MigradorLegado m = new MigradorLegado(is);
+            if (m.in.readShort() != MAGIA) throw new IOException("não é um ficheiro de serialização Java");
+            m.in.readShort(); // versão do stream
+
+            Object raiz = m.lerConteudo(m.in.readUnsignedByte());
+            if (!(raiz instanceof Objeto o) || !nomeSimples(o).equals("MoneyCount")) {
+                throw new IOException("o ficheiro não contém um MoneyCount");
+            }
+            return paraMoneyCount(o);
+        }
+    }
+
+    // ==========================================
+    // CONVERSÃO PARA O MODELO ATUAL
+    // ==========================================
+
+    private static MoneyCount paraMoneyCount(Objeto o) throws IOException {
+        MoneyCount modelo = new MoneyCount();
+        for (Map.Entry<Object, Object> entry : paraMapa(o.campos.get("registos")).entrySet()) {
+            if (entry.getValue() instanceof Objeto r) {
+                Registo registo = paraRegisto(r);
+                modelo.getRegistos().put(registo.getData(), registo);
+            }
+        }
+        modelo.reconstruirProximoId();
+        modelo.converterDespesasFixas();
+        return modelo;
+    }
+
+    private static Registo paraRegisto(Objeto o) throws IOException {
+        YearMonth mes = (YearMonth) paraTempo(o.campos.get("data"));
+        // Os montantes antigos eram double em euros
+        Registo r = new Registo(mes, Dinheiro.centimos(numero(o.campos.get("rendimento"))));
+
+        for (Object valor : paraMapa(o.campos.get("despesas")).values()) {
+            if (!(valor instanceof Objeto d)) continue;
+            int id = (int) numero(d.campos.get("idDespesa"));
+            String nome = (String) d.campos.get("nome");
+            long montante = Dinheiro.centimos(numero(d.campos.get("montante")));
+            LocalDate dia = diaOuHoje(d.campos.get("dia"));
+            if (nomeSimples(d).equals("DespesaFixa")) {
+                r.adicionarDespesa(new DespesaFixa(id, nome, montante, Boolean.TRUE.equals(d.campos.get("pago")), dia));
+            } else {
+                r.adicionarDespesa(new Despesa(id, nome, montante, dia));
+            }
+        }
+
+        for (Object valor : paraMapa(o.campos.get("entradas")).values()) {
+            if (!(valor instanceof Objeto e)) continue;
+            int id = (int) numero(e.campos.get("idEntrada"));
+            r.adicionarEntrada(new Entrada(id, (String) e.campos.get("nome"), Dinheiro.centimos(numero(e.campos.get("montante"))), diaOuHoje(e.campos.get("dia"))));
+        }
+        return r;
+    }
+
+    /**
+     * HashMap/TreeMap gravam os pares chave/valor nas anotações, depois do bloco com o tamanho.
+     */
+    private static Map<Object, Object> paraMapa(Object valor) {
+        Map<Object, Object> mapa = new HashMap<>();
+        if (!(valor instanceof Objeto o)) return mapa;
+
+        List<Object> objetos = new ArrayList<>();
+        for (Object a : o.anotacoes) {
+            if (!(a instanceof byte[])) objetos.add(a);
+        }
+        for (int i = 0; i + 1 < objetos.size(); i += 2) {
+            mapa.put(objetos.get(i), objetos.get(i + 1));
+        }
+        return mapa;
+    }
+
+    /**
+     * Os tipos de java.time são gravados por java.time.Ser como um bloco de dados.
+     */
+    private static Object paraTempo(Object valor) throws IOException {
+        if (!(valor instanceof Objeto o)) return null;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Object a : o.anotacoes) {
+            if (a instanceof byte[] b) bytes.write(b);
+        }
+        ByteBuffer b = ByteBuffer.wrap(bytes.toByteArray());
+        int tipo = b.get();
+        return switch (tipo) {
+            case SER_LOCAL_DATE -> LocalDate.of(b.getInt(), b.get(), b.get());
+            case SER_YEAR_MONTH -> YearMonth.of(b.getInt(), b.get());
+            default -> throw new IOException("tipo java.time " + tipo + " não suportado");
+        };
+    }
+
+    private static LocalDate diaOuHoje(Object valor) throws IOException {
+        Object dia = paraTempo(valor);
+        return dia instanceof LocalDate d ? d : LocalDate.now();
+    }
+
+    private static double numero(Object valor) {
+        if (valor instanceof Number n) return n.doubleValue();
+        if (valor instanceof Objeto o && o.campos.get("value") instanceof Number n) return n.doubleValue(); // Integer, Double, ...
+        return 0.0;
+    }
+
+    private static String nomeSimples(Objeto o) {
+        String nome = o.classe.nome;
+        return nome.substring(nome.lastIndexOf('.') + 1);
+    }
+
+    // ==========================================
+    // LEITURA DO STREAM (java.io.ObjectStreamConstants)
+    // ==========================================
+
+    private Object lerConteudo(int tc) throws IOException {
+        switch (tc) {
+            case TC_NULL:
+                return null;
+            case TC_REFERENCE:
+                return handles.get(in.readInt() - HANDLE_BASE);
+            case TC_STRING: {
+                String s = in.readUTF();
+                handles.add(s);
+                return s;
+            }
+            case TC_OBJECT:
+                return lerObjeto();
+            case TC_CLASSDESC:
+                return lerDescritorNovo();
+            case TC_ENUM: {
+                lerDescritor();
+                int handle = novoHandle(null);
+                String constante = (String) lerConteudo(in.readUnsignedByte());
+                handles.set(handle, constante);
+                return constante;
+            }
+            case TC_ARRAY: {
+                Descritor d = lerDescritor();
+                List<Object> elementos = new ArrayList<>();
+                novoHandle(elementos);
+                int tamanho = in.readInt();
+                for (int i = 0; i < tamanho; i++) elementos.add(lerValor(d.nome.charAt(1)));
+                return elementos;
+            }
+            case TC_BLOCKDATA: {
+                byte[] b = new byte[in.readUnsignedByte()];
+                in.readFully(b);
+                return b;
+            }
+            case TC_BLOCKDATALONG: {
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                return b;
+            }
+            case TC_RESET:
+                handles.clear();
+                return lerConteudo(in.readUnsignedByte());
+            default:
+                throw new IOException(String.format("elemento 0x%02x não suportado", tc));
+        }
+    }
+
+    private Objeto lerObjeto() throws IOException {
+        Objeto o = new Objeto();
+        o.classe = lerDescritor();
+        novoHandle(o);
+
+        // Os dados vêm da superclasse mais alta para a própria classe
+        List<Descritor> hierarquia = new ArrayList<>();
+        for (Descritor d = o.classe; d != null; d = d.superclasse) hierarquia.add(0, d);
+
+        for (Descritor d : hierarquia) {
+            if ((d.flags & SC_EXTERNALIZABLE) != 0) {
+                if ((d.flags & SC_BLOCK_DATA) == 0) throw new IOException("externalizable antigo não suportado: " + d.nome);
+                lerAnotacoes(o.anotacoes);
+            } else {
+                for (Campo c : d.campos) o.campos.put(c.nome(), lerValor(c.tipo()));
+                if ((d.flags & SC_WRITE_METHOD) != 0) lerAnotacoes(o.anotacoes);
+            }
+        }
+        return o;
+    }
+
+    private Descritor lerDescritor() throws IOException {
+        int tc = in.readUnsignedByte();
+        return switch (tc) {
+            case TC_NULL -> null;
+            case TC_REFERENCE -> (Descritor) handles.get(in.readInt() - HANDLE_BASE);
+            case TC_CLASSDESC -> lerDescritorNovo();
+            default -> throw new IOException(String.format("descritor 0x%02x não suportado", tc));
+        };
+    }
+
+    private Descritor lerDescritorNovo() throws IOException {
+        Descritor d = new Descritor();
+        d.nome = in.readUTF();
+        in.readLong(); // serialVersionUID: ignorado de propósito
+        novoHandle(d);
+        d.flags = in.readUnsignedByte();
+
+        int numCampos = in.readShort();
+        for (int i = 0; i < numCampos; i++) {
+            char tipo = (char) in.readUnsignedByte();
+            String nome = in.readUTF();
+            if (tipo == 'L' || tipo == '[') lerConteudo(in.readUnsignedByte()); // nome da classe do campo
+            d.campos.add(new Campo(tipo, nome));
+        }
+
+        lerAnotacoes(new ArrayList<>()); // anotações da classe
+        d.superclasse = lerDescritor();
+        return d;
+    }
+
+    private void lerAnotacoes(List<Object> destino) throws IOException {
+        for (int tc = in.readUnsignedByte(); tc != TC_ENDBLOCKDATA; tc = in.readUnsignedByte()) {
+            destino.add(lerConteudo(tc));
+        }
+    }
+
+    private Object lerValor(char tipo) throws IOException {
+        return switch (tipo) {
+            case 'B' -> in.readByte();
+            case 'C' -> in.readChar();
+            case 'D' -> in.readDouble();
+            case 'F' -> in.readFloat();
+            case 'I' -> in.readInt();
+            case 'J' -> in.readLong();
+            case 'S' -> in.readShort();
+            case 'Z' -> in.readBoolean();
+            case 'L', '[' -> lerConteudo(in.readUnsignedByte());
+            default -> throw new IOException("tipo de campo '" + tipo + "' desconhecido");
+        };
+    }
+
+    private int novoHandle(Object o) {
+        handles.add(o);
+        return handles.size() - 1;
+    }
+}
@@ -1,32 +1,56 @@
 package utils;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import model.MoneyCount;
 
 /**
- * Classe utilitária para serializar e desserializar objetos em ficheiros .dat
- * compatível com todas as classes do teu projeto (Despesa, Registo, MoneyCount, etc.)
+ * Classe utilitária para gravar e ler o modelo em ficheiros .dat
+ * no formato binário versionado (ver {@link FormatoBinario}), ou no formato colunar
+ * (ver {@link FormatoColunar}) se a propriedade {@code moneycount.armazenamento} for {@code colunas}.
+ * Ficheiros antigos (serialização Java) são migrados automaticamente na primeira leitura.
  */
 public class Serializer {
 
-    private static final String BASE_PATH = "resources/";
+    static final String BASE_PATH = "resources/";
+    private static final String SUFIXO_LEGADO = ".legado";
+    private static final String SUFIXO_ILEGIVEL = ".ilegivel";
+    private static final String PROPRIEDADE_ARMAZENAMENTO = "moneycount.armazenamento";
+
+    /**
+     * @return true se o modelo deve ser gravado no formato colunar.
+     */
+    private static boolean usarColunas() {
+        return "colunas".equalsIgnoreCase(System.getProperty(PROPRIEDADE_ARMAZENAMENTO));
+    }
+
+    private static void escrever(Path caminho, MoneyCount modelo) throws IOException {
+        if (usarColunas()) {
+            FormatoColunar.escrever(caminho, modelo);
+        } else {
+            FormatoBinario.escrever(caminho, modelo);
+        }
+    }
 
     /**
-     * Guarda um objeto serializável num ficheiro .dat dentro de ../resources/
+     * Guarda o modelo num ficheiro .dat dentro de ../resources/
      *
      * @param nomeFicheiro Nome do ficheiro (sem caminho completo)
-     * @param objeto        Objeto a serializar
+     * @param modelo        Modelo a gravar
      * @return true se gravou com sucesso, false se ocorreu erro
      */
-    public static boolean guardar(String nomeFicheiro, Object objeto) {
+    public static boolean guardar(String nomeFicheiro, MoneyCount modelo) {
         File pasta = new File(BASE_PATH);
         if (!pasta.exists()) {
             pasta.mkdirs(); // cria pasta caso não exista
         }
 
         File ficheiro = new File(pasta, nomeFicheiro);
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ficheiro))) {
-            oos.writeObject(objeto);
-            oos.flush();
+        try {
+            escrever(ficheiro.toPath(), modelo);
             System.out.println("✅ Dados guardados em: " + ficheiro.getAbsolutePath());
             return true;
         } catch (IOException e) {
@@ -36,25 +60,109 @@ public class Serializer {
     }
 
     /**
-     * Lê um objeto serializado de um ficheiro .dat
+     * @return true se o ficheiro existe (para distinguir um ficheiro que falta de um que não se conseguiu ler).
+     */
+    public static boolean existe(String nomeFicheiro) {
+        return new File(BASE_PATH, nomeFicheiro).exists();
+    }
+
+    /**
+     * Guarda uma cópia de um ficheiro que não se conseguiu ler, antes de alguma coisa o poder substituir.
+     *
+     * @param nomeFicheiro Nome do ficheiro (sem caminho completo)
+     * @return Caminho da cópia, ou null se não foi possível copiar
+     */
+    public static Path copiarIlegivel(String nomeFicheiro) {
+        Path caminho = new File(BASE_PATH, nomeFicheiro).toPath();
+        Path copia = Path.of(caminho + SUFIXO_ILEGIVEL);
+        try {
+            Files.copy(caminho, copia, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("📦 Cópia do ficheiro ilegível em: " + copia.toAbsolutePath());
+            return copia;
+        } catch (IOException e) {
+            System.err.println("⚠️ Erro ao copiar ficheiro " + caminho.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lê o modelo de um ficheiro .dat
+     * Se o ficheiro estiver no formato antigo, é convertido e regravado no formato novo
+     * (o original fica guardado com a extensão .legado). Um ficheiro num formato diferente
+     * do escolhido também é regravado.
+     *
+     * @param nomeFicheiro Nome do ficheiro (sem caminho completo)
+     * @return O modelo lido, ou null se ocorrer erro
+     */
+    public static MoneyCount ler(String nomeFicheiro) {
+        File ficheiro = new File(BASE_PATH, nomeFicheiro);
+        if (!ficheiro.exists()) {
+            System.err.println("⚠️ Ficheiro não encontrado: " + ficheiro.getAbsolutePath());
+            return null;
+        }
+
+        Path caminho = ficheiro.toPath();
+        try {
+            if (MigradorLegado.eLegado(caminho)) {
+                MoneyCount modelo = MigradorLegado.migrar(caminho);
+                Files.copy(caminho, Path.of(caminho + SUFIXO_LEGADO), StandardCopyOption.REPLACE_EXISTING);
+                escrever(caminho, modelo);
+                System.out.println("🔄 Dados migrados do formato antigo: " + ficheiro.getAbsolutePath());
+                return modelo;
+            }
+
+            if (FormatoColunar.eColunar(caminho)) {
+                MoneyCount modelo = FormatoColunar.ler(caminho);
+                System.out.println("📂 Dados lidos de: " + ficheiro.getAbsolutePath());
+                if (!usarColunas()) {
+                    FormatoBinario.escrever(caminho, modelo);
+                    System.out.println("🔄 Dados convertidos para o formato binário: " + ficheiro.getAbsolutePath());
+                }
+                return modelo;
+            }
+
+            MoneyCount modelo = FormatoBinario.ler(caminho);
+            System.out.println("📂 Dados lidos de: " + ficheiro.getAbsolutePath());
+            if (usarColunas()) {
+                FormatoColunar.escrever(caminho, modelo);
+                System.out.println("🔄 Dados convertidos para o formato colunar: " + ficheiro.getAbsolutePath());
+            }
+            return modelo;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Erro ao ler ficheiro " + ficheiro.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lê o modelo sem nunca regravar o ficheiro (ex: para exportar com o programa aberto).
+     * Ao contrário de {@link #ler}, não há migração nem conversão: o formato é escolhido pela assinatura.
+     * Um ficheiro binário fica aberto, para os meses lidos depois não virem de um ficheiro que o
+     * programa entretanto regravou (ver {@link Journal#lerSoLeitura} para o journal).
      *
      * @param nomeFicheiro Nome do ficheiro (sem caminho completo)
-     * @param <T> Tipo do objeto esperado
-     * @return O objeto lido, ou null se ocorrer erro
+     * @return O modelo lido, ou null se ocorrer erro
      */
-    @SuppressWarnings("unchecked")
-    public static <T> T ler(String nomeFicheiro) {
+    public static MoneyCount lerSoLeitura(String nomeFicheiro) {
         File ficheiro = new File(BASE_PATH, nomeFicheiro);
         if (!ficheiro.exists()) {
             System.err.println("⚠️ Ficheiro não encontrado: " + ficheiro.getAbsolutePath());
             return null;
         }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ficheiro))) {
-            T objeto = (T) ois.readObject();
+        Path caminho = ficheiro.toPath();
+        try {
+            MoneyCount modelo;
+            if (MigradorLegado.eLegado(caminho)) {
+                modelo = MigradorLegado.migrar(caminho);
+            } else if (FormatoColunar.eColunar(caminho)) {
+                modelo = FormatoColunar.ler(caminho);
+            } else {
+                modelo = FormatoBinario.lerSoLeitura(caminho);
+            }
             System.out.println("📂 Dados lidos de: " + ficheiro.getAbsolutePath());
-            return objeto;
-        } catch (IOException | ClassNotFoundException e) {
+            return modelo;
+        } catch (IOException | RuntimeException e) {
             System.err.println("⚠️ Erro ao ler ficheiro " + ficheiro.getName() + ": " + e.getMessage());
             return null;
         }
@@ -0,0 +1,71 @@
+package view;
+
+import java.util.EnumSet;
+import java.util.function.Consumer;
+
+import javax.swing.Timer;
+
+/**
+ * Junta os pedidos de redesenho da janela e aplica-os no máximo uma vez por frame, no EDT.
+ *
+ * Quem altera alguma coisa só marca a região como suja; várias marcações seguidas (teclas de mês
+ * carregadas, cliques rápidos, importações) dão um só redesenho dessa região no frame seguinte,
+ * por isso a janela nunca fica atrás do que o utilizador faz. As regiões são desenhadas pela ordem
+ * de {@link Regiao}: uma região marcada a meio do frame ainda é desenhada nele se vier depois.
+ */
+final class AgendadorDesenho {
+
+    enum Regiao {
+        MES,       // Pedir os dados do mês do controlador
+        CABECALHO, // Nome do mês
+        LISTA,     // Aplicar os dados do mês que chegaram (lista e somas do gráfico)
+        CAIXAS,    // Caixas de resumo
+        GRAFICO    // Fatias do gráfico
+    }
+
+    private static final int FRAME_MS = 16; // ~60 frames por segundo
+
+    private final Consumer<Regiao> desenhar;
+    private final EnumSet<Regiao> sujas = EnumSet.noneOf(Regiao.class);
+    private final Timer timer;
+    private long ultimoFrame; // System.nanoTime()
+    private boolean aDesenhar;
+
+    /**
+     * @param desenhar Desenha uma região (chamado no EDT, no máximo uma vez por frame para cada região)
+     */
+    AgendadorDesenho(Consumer<Regiao> desenhar) {
+        this.desenhar = desenhar;
+        this.timer = new Timer(FRAME_MS, e -> frame());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Marca regiões para redesenhar no próximo frame. Só no EDT.
+     */
+    void marcar(Regiao... regioes) {
+        for (Regiao r : regioes) sujas.add(r);
+        if (!aDesenhar) agendar();
+    }
+
+    private void agendar() {
+        if (sujas.isEmpty() || timer.isRunning()) return;
+        // Se o último frame já foi há mais de um frame, desenha logo
+        long desde = (System.nanoTime() - ultimoFrame) / 1_000_000;
+        timer.setInitialDelay((int) Math.max(0, FRAME_MS - desde));
+        timer.start();
+    }
+
+    private void frame() {
+        ultimoFrame = System.nanoTime();
+        aDesenhar = true;
+        try {
+            for (Regiao r : Regiao.values()) {
+                if (sujas.remove(r)) desenhar.accept(r);
+            }
+        } finally {
+            aDesenhar = false;
+            agendar(); // O que foi marcado para trás fica para o frame seguinte
+        }
+    }
+}
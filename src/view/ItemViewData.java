@@ -0,0 +1,33 @@
+package view;
+
+import java.util.Comparator;
+
+import controller.Evento;
+
+/**
+ * Uma linha da lista (despesa ou entrada), com o montante em cêntimos. Não muda depois de criada,
+ * por isso pode ser partilhada entre a cache de {@link ModeloVista} e a lista.
+ */
+final class ItemViewData {
+    final int id; final String nome; final long montante; // Cêntimos
+    final boolean fixa; final boolean paga; final boolean eEntrada;
+
+    // ORDENAÇÃO: Despesas Fixas sempre no topo. De seguida, Entradas e Despesas ordenadas por ID recente.
+    // Os ids são únicos, por isso cada item tem um só lugar (e pode ser procurado por pesquisa binária)
+    static final Comparator<ItemViewData> ORDEM = (i1, i2) -> {
+        if (i1.fixa && !i2.fixa) return -1;
+        if (!i1.fixa && i2.fixa) return 1;
+
+        // Se as duas forem fixas ou as duas não forem, ordenamos por ID decrescente
+        return Integer.compare(i2.id, i1.id);
+    };
+
+    ItemViewData(int id, String nome, long montante, boolean fixa, boolean paga, boolean eEntrada) {
+        this.id = id; this.nome = nome; this.montante = montante;
+        this.fixa = fixa; this.paga = paga; this.eEntrada = eEntrada;
+    }
+
+    ItemViewData(Evento.Item i) {
+        this(i.id(), i.nome(), i.montante(), i.fixa(), i.paga(), i.entrada());
+    }
+}
@@ -1,46 +1,79 @@
 package view;
 
+import controller.Evento;
 import controller.MoneyCountController;
-import model.Despesa;
-import model.DespesaFixa;
-import model.Entrada;
+import model.Dinheiro;
+import utils.ImportadorExtratos;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.plaf.FontUIResource;
 import javax.swing.plaf.basic.BasicScrollBarUI;
 import javafx.application.Platform;
 import javafx.embed.swing.JFXPanel;
 import javafx.scene.Scene;
 import javafx.scene.chart.PieChart;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.scene.control.Tooltip;
 
 import java.awt.*;
 import java.awt.geom.Path2D;
 import java.awt.event.ActionEvent;
+import java.nio.file.Path;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
-public class Janela extends JFrame {
+public final class Janela extends JFrame {
     private MoneyCountController controller;
     private JLabel lblData;
-    private JPanel listaDespesas; 
+    private JList<ItemViewData> listaItens;
+    private final ModeloItens modeloItens = new ModeloItens();
+    private final RenderizadorItem renderizador = new RenderizadorItem();
     private CaixaTituloValor caixaSalario, caixaSaldo, caixaDespesas, caixaPoupanca;
     private JFXPanel fxPanel;
     private final int alturaGrafico = 300;
 
+    // Estado da lista e do gráfico do mês visto, para os eventos só mexerem no que mudou (só no EDT)
+    private final ModeloVista modeloVista;
+    private YearMonth mesMostrado; // O mês que está no ecrã (pode ficar atrás do controlador enquanto o seguinte é preparado)
+    private VistaMes vistaPorAplicar; // Dados que chegaram e ainda não foram aplicados
+    private VistaMes caixasDaVista; // Totais das caixas, enquanto nenhuma alteração os mudar (null = ler do controlador)
+    private final AgendadorDesenho agendador = new AgendadorDesenho(this::desenhar);
+    private final Map<Integer, ItemViewData> itensPorId = new HashMap<>();
+    private final Map<String, Long> somaPorNome = new LinkedHashMap<>(); // Cêntimos de cada nome, pela ordem do gráfico
+
+    // Gráfico criado uma vez; as fatias são atualizadas no lugar (só na thread do JavaFX)
+    private final java.util.concurrent.atomic.AtomicReference<Runnable> fatiasPendentes = new java.util.concurrent.atomic.AtomicReference<>();
+    private static final int MAX_FATIAS = 12; // Com mais nomes, os mais pequenos juntam-se em "Outros"
+    private PieChart grafico;
+    private final Map<String, PieChart.Data> fatias = new HashMap<>();
+    private PieChart.Data fatiaOutros;
+    private int nomesEmOutros;
+    private final Map<String, Tooltip> dicas = new HashMap<>(); // Ficam de um mês para o outro
+    private final Map<String, String> estilos = new HashMap<>();
+
+    private final Map<String, Color> coresPorNome = new java.util.concurrent.ConcurrentHashMap<>();
+
     public Janela(MoneyCountController controller) {
         this.controller = controller;
+        this.modeloVista = new ModeloVista(controller); // Subscreve antes da janela, para a cache já estar limpa quando ela pede o mês
         setUIFont(new FontUIResource("Arial", Font.PLAIN, 14));
         
         configurarJanelaBase();
         inicializarComponentes();
         configurarHotkeys();
+        controller.subscrever(this::receberEvento);
+        atualizarVista();
         
         setVisible(true);
     }
@@ -86,8 +119,8 @@ public class Janela extends JFrame {
         BotaoRedondo btnAnterior = new BotaoRedondo("←");
         BotaoRedondo btnSeguinte = new BotaoRedondo("→");
 
-        btnSeguinte.addActionListener(e -> { controller.avancarMes(); atualizarVista(); });
-        btnAnterior.addActionListener(e -> { controller.retrocederMes(); atualizarVista(); });
+        btnSeguinte.addActionListener(e -> modeloVista.executar(controller::avancarMes));
+        btnAnterior.addActionListener(e -> modeloVista.executar(controller::retrocederMes));
     
         JPanel painelEsquerda = new JPanel(new FlowLayout(FlowLayout.LEFT, 20, 5));
         painelEsquerda.setOpaque(false);
@@ -117,7 +150,7 @@ public class Janela extends JFrame {
         fxPanel.setPreferredSize(new Dimension(600, alturaGrafico));
         fxPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 600));
         painelEsquerdo.add(fxPanel);
-        atualizarGrafico(fxPanel);
+        criarGrafico();
 
         JPanel painelResumo = new JPanel(new GridBagLayout());
         painelResumo.setBackground(Color.WHITE);
@@ -155,25 +188,34 @@ public class Janela extends JFrame {
 
         JButton btnDespesa = new BotaoEstiloTitulo("+ Despesa", new Color(174, 239, 164));
         JButton btnDespesaFixa = new BotaoEstiloTitulo("+ Despesa Fixa", new Color(220, 167, 235));
-        JButton btnEntrada = new BotaoEstiloTitulo("+ Entrada", new Color(227, 196, 83)); // Cor azul claro
+        JButton btnEntrada = new BotaoEstiloTitulo("+ Entrada", COR_ENTRADA); // Cor azul claro
+        JButton btnImportar = new BotaoEstiloTitulo("Importar Extrato", new Color(150, 200, 255));
 
         btnDespesa.addActionListener(e -> abrirDialogoNovaDespesa(false));
         btnDespesaFixa.addActionListener(e -> abrirDialogoNovaDespesa(true));
         btnEntrada.addActionListener(e -> abrirDialogoNovaEntrada());
+        btnImportar.addActionListener(e -> importarExtrato(btnImportar));
 
         painelTituloComBotoes.add(btnDespesa);
         painelTituloComBotoes.add(btnDespesaFixa);
         painelTituloComBotoes.add(btnEntrada);
+        painelTituloComBotoes.add(btnImportar);
         
         painelDireito.add(painelTituloComBotoes, BorderLayout.NORTH);
 
-        listaDespesas = new JPanel(new GridBagLayout());
-        listaDespesas.setBackground(new Color(238, 238, 238));
-        listaDespesas.setOpaque(true);
-
-        preencherListaItens();
+        // Lista virtual: só as linhas visíveis são pintadas, todas com o mesmo componente
+        listaItens = new JList<>(modeloItens);
+        listaItens.setCellRenderer(renderizador);
+        listaItens.setFixedCellHeight(RenderizadorItem.ALTURA);
+        listaItens.setFixedCellWidth(RenderizadorItem.LARGURA);
+        listaItens.setBackground(new Color(238, 238, 238));
+        listaItens.setOpaque(true);
+        listaItens.setFocusable(false); // As setas continuam a mudar de mês
+        listaItens.addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override public void mouseClicked(java.awt.event.MouseEvent e) { cliqueNaLista(e.getPoint()); }
+        });
 
-        JScrollPane scrollDespesas = new JScrollPane(listaDespesas);
+        JScrollPane scrollDespesas = new JScrollPane(listaItens);
         scrollDespesas.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollDespesas.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollDespesas.setBorder(BorderFactory.createEmptyBorder(0, 0, 50, 0));
@@ -184,79 +226,245 @@ public class Janela extends JFrame {
         return painelDireito;
     }
 
+    /**
+     * Mostra o mês do controlador. Os dados são preparados fora do EDT (ou já estão na cache),
+     * e aqui só são aplicados, no próximo frame.
+     */
     public void atualizarVista() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMMM yyyy", Locale.of("pt", "PT"));
-        lblData.setText(controller.getDataModelo().format(formatter));
-
-        caixaSalario.setValor(String.format("%.2f €", controller.getRendimentoAtual()));
-        caixaSaldo.setValor(String.format("%.2f €", controller.getSaldoAtual()));
-        caixaDespesas.setValor(String.format("%.2f €", controller.getTotalDespesas()));
-        caixaPoupanca.setValor(String.format("%.2f €", controller.getPoupancaAcumulada()));
+        agendador.marcar(AgendadorDesenho.Regiao.MES, AgendadorDesenho.Regiao.CABECALHO);
+    }
 
-        preencherListaItens();
-        atualizarGrafico(fxPanel);
+    /**
+     * Desenha uma região suja (chamado pelo agendador, no máximo uma vez por frame).
+     */
+    private void desenhar(AgendadorDesenho.Regiao regiao) {
+        switch (regiao) {
+            case MES -> modeloVista.pedir(controller.getDataModelo(), this::receberVista);
+            case CABECALHO -> {
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMMM yyyy", Locale.of("pt", "PT"));
+                lblData.setText(controller.getDataModelo().format(formatter));
+            }
+            case LISTA -> aplicarVista();
+            case CAIXAS -> desenharCaixas();
+            case GRAFICO -> publicarGrafico();
+        }
     }
 
-    private static class ItemViewData {
-        int id; String nome; double montante;
-        boolean fixa; boolean paga; boolean eEntrada;
+    private void receberVista(VistaMes v) {
+        // Resultados de meses por onde já se passou não substituem o do mês atual
+        if (!v.mes().equals(controller.getDataModelo())) return;
+        vistaPorAplicar = v;
+        agendador.marcar(AgendadorDesenho.Regiao.LISTA);
+    }
 
-        ItemViewData(int id, String nome, double montante, boolean fixa, boolean paga, boolean eEntrada) {
-            this.id = id; this.nome = nome; this.montante = montante;
-            this.fixa = fixa; this.paga = paga; this.eEntrada = eEntrada;
+    private void aplicarVista() {
+        VistaMes v = vistaPorAplicar;
+        vistaPorAplicar = null;
+        if (v == null || !v.mes().equals(controller.getDataModelo())) return; // Entretanto já se mudou de mês
+        if (!modeloVista.atual(v)) { // O mês mudou depois de calculado: pede outra vez
+            agendador.marcar(AgendadorDesenho.Regiao.MES);
+            return;
         }
+        mesMostrado = v.mes();
+
+        itensPorId.clear();
+        for (ItemViewData item : v.itens()) itensPorId.put(item.id, item);
+        modeloItens.substituirTodos(v.itens());
+
+        somaPorNome.clear();
+        somaPorNome.putAll(v.somaPorNome());
+        caixasDaVista = v;
+        agendador.marcar(AgendadorDesenho.Regiao.CAIXAS, AgendadorDesenho.Regiao.GRAFICO);
+
+        // Os vizinhos ficam prontos para quando se mudar de mês
+        modeloVista.preparar(v.mes().plusMonths(1));
+        modeloVista.preparar(v.mes().minusMonths(1));
+    }
+
+    /**
+     * Escreve os valores das caixas (só as que mudaram de texto são repintadas).
+     */
+    private void desenharCaixas() {
+        caixaPoupanca.setValor(String.format("%.2f €", controller.getPoupancaAcumulada()));
+        if (mesMostrado == null) return;
+
+        long[] totais = caixasDaVista != null
+                ? new long[] { caixasDaVista.rendimento(), caixasDaVista.saldo(), caixasDaVista.totalDespesas() }
+                : controller.lerMes(mesMostrado, r -> new long[] { r.getRendimento(), r.getSaldo(), r.getTotalDespesas() });
+        if (totais == null) return;
+        caixaSalario.setValor(String.format("%.2f €", Dinheiro.euros(totais[0])));
+        caixaSaldo.setValor(String.format("%.2f €", Dinheiro.euros(totais[1])));
+        caixaDespesas.setValor(String.format("%.2f €", Dinheiro.euros(totais[2])));
     }
 
-    private void preencherListaItens() {
-        listaDespesas.removeAll();
-        GridBagConstraints gbcList = new GridBagConstraints();
-        gbcList.gridx = 0; gbcList.gridy = 0;
-        gbcList.fill = GridBagConstraints.HORIZONTAL;
-        gbcList.anchor = GridBagConstraints.NORTH;
-        gbcList.insets = new Insets(2, 2, 2, 2);
+    // ==========================================
+    // ATUALIZAÇÃO POR EVENTOS
+    // ==========================================
 
-        for (ItemViewData item : getItensOrdenados()) {
-            listaDespesas.add(new ItemRegisto(item.id, item.nome, item.montante, item.fixa, item.paga, item.eEntrada), gbcList);
-            gbcList.gridy++;
+    /**
+     * Recebe as alterações do controlador (em qualquer thread) e aplica-as no EDT.
+     */
+    private void receberEvento(Evento evento) {
+        if (SwingUtilities.isEventDispatchThread()) aplicarEvento(evento);
+        else SwingUtilities.invokeLater(() -> aplicarEvento(evento));
+    }
+
+    /**
+     * Atualiza só o que a alteração afeta: a linha do item, as caixas cujo valor muda e a fatia do gráfico.
+     * Mudar de mês, ou muitas alterações de uma vez no mês visto, refazem a vista toda.
+     */
+    private void aplicarEvento(Evento evento) {
+        YearMonth mesVisto = mesMostrado;
+        switch (evento) {
+            case Evento.MesMudado e -> atualizarVista();
+            case Evento.MesesAlterados e when mesVisto != null && e.inclui(mesVisto) -> agendador.marcar(AgendadorDesenho.Regiao.MES);
+            case Evento.ItemAdicionado e when e.mes().equals(mesVisto) -> {
+                colocarLinha(new ItemViewData(e.item()));
+                totaisAlterados(e.item().entrada());
+            }
+            case Evento.ItemRemovido e when e.mes().equals(mesVisto) -> {
+                retirarLinha(e.item().id());
+                totaisAlterados(e.item().entrada());
+            }
+            case Evento.ItemEditado e when e.mes().equals(mesVisto) -> {
+                colocarLinha(new ItemViewData(e.depois()));
+                totaisAlterados(e.depois().entrada());
+            }
+            case Evento.PagaAlterada e when e.mes().equals(mesVisto) -> {
+                if (itensPorId.containsKey(e.item().id())) {
+                    ItemViewData item = new ItemViewData(e.item());
+                    itensPorId.put(item.id, item);
+                    modeloItens.substituir(item);
+                }
+                totaisAlterados(true); // O gráfico conta as fixas pagas ou não
+            }
+            case Evento.RendimentoAlterado e when e.mes().equals(mesVisto) -> totaisAlterados(true);
+            default -> agendador.marcar(AgendadorDesenho.Regiao.CAIXAS); // Outro mês: só a poupança acumulada pode mudar
         }
+    }
 
-        gbcList.weighty = 1.0;
-        listaDespesas.add(Box.createVerticalGlue(), gbcList);
+    /**
+     * As caixas passam a ser lidas do controlador; o gráfico só muda com as despesas.
+     */
+    private void totaisAlterados(boolean semGrafico) {
+        caixasDaVista = null;
+        agendador.marcar(AgendadorDesenho.Regiao.CAIXAS);
+        if (!semGrafico) agendador.marcar(AgendadorDesenho.Regiao.GRAFICO);
+    }
 
-        listaDespesas.revalidate();
-        listaDespesas.repaint();
-        SwingUtilities.invokeLater(() -> listaDespesas.updateUI());
+    /**
+     * Põe a linha do item no sítio certo da lista (se já existir, é substituída) e acerta a soma do nome.
+     */
+    private void colocarLinha(ItemViewData item) {
+        retirarLinha(item.id);
+        modeloItens.inserir(item);
+        itensPorId.put(item.id, item);
+        somarFatia(item, 1);
     }
 
-    private List<ItemViewData> getItensOrdenados() {
-        List<ItemViewData> itens = new ArrayList<>();
-        
-        List<Despesa> despesas = controller.getDespesasMesAtual();
-        if (despesas != null) {
-            for (Despesa d : despesas) {
-                boolean fixa = d instanceof DespesaFixa;
-                boolean paga = fixa && ((DespesaFixa) d).isPago();
-                itens.add(new ItemViewData(d.getIdDespesa(), d.getNome(), d.getMontante(), fixa, paga, false));
-            }
+    private void retirarLinha(int id) {
+        ItemViewData item = itensPorId.remove(id);
+        if (item == null) return;
+        modeloItens.remover(item);
+        somarFatia(item, -1);
+    }
+
+    private void somarFatia(ItemViewData item, int sinal) {
+        if (item.eEntrada) return;
+        long soma = somaPorNome.merge(item.nome, sinal * item.montante, Long::sum);
+        if (soma <= 0) somaPorNome.remove(item.nome);
+    }
+
+    /**
+     * Modelo da lista, com os itens do mês visto pela ordem de {@link ItemViewData#ORDEM}.
+     * Cada alteração só avisa a lista do intervalo que mudou.
+     */
+    private static class ModeloItens extends AbstractListModel<ItemViewData> {
+        private final List<ItemViewData> itens = new ArrayList<>();
+
+        @Override public int getSize() { return itens.size(); }
+        @Override public ItemViewData getElementAt(int indice) { return itens.get(indice); }
+
+        int posicao(ItemViewData item) {
+            return Collections.binarySearch(itens, item, ItemViewData.ORDEM);
         }
 
-        List<Entrada> entradas = controller.getEntradasMesAtual();
-        if (entradas != null) {
-            for (Entrada e : entradas) {
-                itens.add(new ItemViewData(e.getIdEntrada(), e.getNome(), e.getMontante(), false, false, true));
-            }
+        void inserir(ItemViewData item) {
+            int pos = posicao(item);
+            if (pos < 0) pos = -pos - 1;
+            itens.add(pos, item);
+            fireIntervalAdded(this, pos, pos);
+        }
+
+        void remover(ItemViewData item) {
+            int pos = posicao(item);
+            if (pos < 0) return;
+            itens.remove(pos);
+            fireIntervalRemoved(this, pos, pos);
+        }
+
+        /**
+         * Troca um item por outra versão dele (mesmo id e mesmo lugar na ordem).
+         */
+        void substituir(ItemViewData item) {
+            int pos = posicao(item);
+            if (pos < 0) return;
+            itens.set(pos, item);
+            fireContentsChanged(this, pos, pos);
+        }
+
+        void substituirTodos(List<ItemViewData> novos) {
+            int antes = itens.size();
+            itens.clear();
+            if (antes > 0) fireIntervalRemoved(this, 0, antes - 1);
+            itens.addAll(novos);
+            if (!novos.isEmpty()) fireIntervalAdded(this, 0, novos.size() - 1);
+        }
+    }
+
+    /**
+     * As linhas da lista são só pintadas: o clique é encaminhado para o botão ou a caixa
+     * que está nesse ponto da linha.
+     */
+    private void cliqueNaLista(Point ponto) {
+        int indice = listaItens.locationToIndex(ponto);
+        if (indice < 0) return;
+        Rectangle celula = listaItens.getCellBounds(indice, indice);
+        if (celula == null || !celula.contains(ponto)) return;
+
+        ItemViewData item = modeloItens.getElementAt(indice);
+        Component alvo = renderizador.componenteEm(listaItens, item, indice, celula.getSize(), ponto.x - celula.x, ponto.y - celula.y);
+        if (alvo == renderizador.chkPaga) controller.marcarDespesaComoPaga(item.id, !item.paga);
+        else if (alvo == renderizador.btnEditar) editarItem(item);
+        else if (alvo == renderizador.btnRemover) removerItem(item);
+    }
+
+    private void editarItem(ItemViewData item) {
+        // Usamos também a cor azul claro para combinar no diálogo de edição!
+        Color corElemento = item.eEntrada ? COR_ENTRADA : gerarCorParaNome(item.nome);
+        String hexCor = String.format("#%02x%02x%02x", corElemento.getRed(), corElemento.getGreen(), corElemento.getBlue());
+        String msg = "<html>Novo valor para <b><font color='" + hexCor + "'>" + item.nome + "</font></b>:</html>";
+        String novoVal = mostrarDialogoInputSemBorda(msg);
+        if (novoVal == null || novoVal.trim().isEmpty()) return;
+        try {
+            double nValor = Double.parseDouble(novoVal.replace(",", "."));
+            if (item.eEntrada) controller.editarEntrada(item.id, nValor);
+            else if (item.fixa) controller.editarDespesaFixaFuturas(item.id, nValor);
+            else controller.editarDespesa(item.id, nValor);
+        } catch (Exception ex) { JOptionPane.showMessageDialog(this, "Erro ao editar!"); }
+    }
+
+    private void removerItem(ItemViewData item) {
+        Color corElemento = item.eEntrada ? COR_ENTRADA : gerarCorParaNome(item.nome);
+        String hexCor = String.format("#%02x%02x%02x", corElemento.getRed(), corElemento.getGreen(), corElemento.getBlue());
+        String tipo = item.eEntrada ? "entrada" : "despesa";
+        String msg = "<html>Remover a " + tipo + " <b><font color='" + hexCor + "'>" + item.nome + "</font></b>?</html>";
+        boolean confirmar = mostrarDialogoConfirmacaoSemBorda(msg);
+        if (confirmar) {
+            if (item.eEntrada) controller.removerEntrada(item.id);
+            else if (item.fixa) controller.removerDespesaFixaFuturas(item.id);
+            else controller.removerDespesa(item.id);
         }
-        
-        // ORDENAÇÃO: Despesas Fixas sempre no topo. De seguida, Entradas e Despesas ordenadas por ID recente.
-        itens.sort((i1, i2) -> {
-            if (i1.fixa && !i2.fixa) return -1;
-            if (!i1.fixa && i2.fixa) return 1;
-            
-            // Se as duas forem fixas ou as duas não forem, ordenamos por ID decrescente
-            return Integer.compare(i2.id, i1.id);
-        });
-        
-        return itens;
     }
 
     private String mostrarDialogoInputSemBorda(String mensagem) {
@@ -418,7 +626,6 @@ public class Janela extends JFrame {
         try {
             double valor = Double.parseDouble(valorStr.replace(",", "."));
             controller.adicionarDespesa(nome, valor, eFixa);
-            atualizarVista();
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "Valor inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
         }
@@ -434,65 +641,202 @@ public class Janela extends JFrame {
         try {
             double valor = Double.parseDouble(valorStr.replace(",", "."));
             controller.adicionarEntrada(nome, valor);
-            atualizarVista();
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "Valor inválido!", "Erro", JOptionPane.ERROR_MESSAGE);
         }
     }
 
-    private void atualizarGrafico(JFXPanel fxPanel) {
-        List<Despesa> despesas = controller.getDespesasMesAtual();
-        if (despesas == null) return;
-
-        Map<String, Double> somaPorNome = new HashMap<>();
-        Map<String, java.awt.Color> coresPorNome = new HashMap<>();
-        for (Despesa d : despesas) {
-            somaPorNome.put(d.getNome(), somaPorNome.getOrDefault(d.getNome(), 0.0) + d.getMontante());
-            coresPorNome.put(d.getNome(), gerarCorParaNome(d.getNome()));
-        }
+    /**
+     * Importa um extrato CSV/OFX numa thread de fundo, com uma barra de progresso.
+     * A janela continua a funcionar durante a importação.
+     */
+    private void importarExtrato(JButton btnImportar) {
+        JFileChooser escolha = new JFileChooser();
+        escolha.setFileFilter(new FileNameExtensionFilter("Extratos bancários (CSV, OFX)", "csv", "ofx", "qfx"));
+        if (escolha.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        Path ficheiro = escolha.getSelectedFile().toPath();
+        ProgressMonitor monitor = new ProgressMonitor(this, "A importar " + ficheiro.getFileName() + "...", null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        btnImportar.setEnabled(false);
+        long inicio = System.nanoTime();
+
+        SwingWorker<ImportadorExtratos.Resultado, Void> tarefa = new SwingWorker<>() {
+            @Override
+            protected ImportadorExtratos.Resultado doInBackground() throws Exception {
+                return controller.importarExtrato(ficheiro, p -> setProgress((int) Math.round(p * 100)));
+            }
 
-        ObservableList<PieChart.Data> pieChartData = FXCollections.observableArrayList();
-        somaPorNome.forEach((nome, valor) -> pieChartData.add(new PieChart.Data(nome, valor)));
+            @Override
+            protected void done() {
+                monitor.close();
+                btnImportar.setEnabled(true);
+                try {
+                    ImportadorExtratos.Resultado r = get();
+                    double segundos = Math.max((System.nanoTime() - inicio) / 1e9, 1e-3);
+                    String mensagem = String.format("%d movimentos importados em %d meses (%.0f linhas/s).",
+                            r.movimentos(), r.porMes().size(), (r.movimentos() + r.ignoradas()) / segundos);
+                    if (r.ignoradas() > 0) mensagem += "\n" + r.ignoradas() + " linhas ignoradas.";
+                    System.out.println("📥 " + mensagem.replace('\n', ' ') + " Ficheiro: " + ficheiro.toAbsolutePath());
+                    JOptionPane.showMessageDialog(Janela.this, mensagem, "Importação", JOptionPane.INFORMATION_MESSAGE);
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(Janela.this, "Erro ao importar: " + ex.getCause().getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        tarefa.addPropertyChangeListener(ev -> {
+            if ("progress".equals(ev.getPropertyName())) monitor.setProgress((Integer) ev.getNewValue());
+        });
+        tarefa.execute();
+    }
 
+    /**
+     * Cria o gráfico (uma só vez). Daqui em diante só as fatias mudam.
+     */
+    private void criarGrafico() {
         Platform.runLater(() -> {
-            PieChart chart = new PieChart(pieChartData);
-            chart.setLegendVisible(false);
-            chart.setLabelsVisible(true);
-            chart.setPrefSize(600, 400);
-            chart.setStyle("-fx-background-color: white;");
+            grafico = new PieChart();
+            grafico.setLegendVisible(false);
+            grafico.setLabelsVisible(true);
+            grafico.setPrefSize(600, 400);
+            grafico.setStyle("-fx-background-color: white;");
 
-            Scene scene = new Scene(chart);
+            Scene scene = new Scene(grafico);
             scene.setFill(javafx.scene.paint.Color.WHITE);
             fxPanel.setScene(scene);
+        });
+    }
 
-            Platform.runLater(() -> {
-                double total = somaPorNome.values().stream().mapToDouble(Double::doubleValue).sum();
-                for (PieChart.Data data : chart.getData()) {
-                    final String nome = data.getName();
-                    final double valor = data.getPieValue();
-                    final double percentagem = total == 0 ? 0 : (valor / total) * 100.0;
-                    final java.awt.Color awtColor = coresPorNome.get(nome);
-                    final String rgb = awtColor == null ? null : String.format("%d, %d, %d", awtColor.getRed(), awtColor.getGreen(), awtColor.getBlue());
-
-                    data.nodeProperty().addListener((obs, oldNode, newNode) -> {
-                        if (newNode != null) {
-                            if (rgb != null) newNode.setStyle("-fx-pie-color: rgb(" + rgb + ");");
-                            Tooltip.install(newNode, new Tooltip(String.format("%s: %.2f € (%.1f%%)", nome, valor, percentagem)));
-                        }
-                    });
-
-                    if (data.getNode() != null) {
-                        if (rgb != null) data.getNode().setStyle("-fx-pie-color: rgb(" + rgb + ");");
-                        Tooltip.install(data.getNode(), new Tooltip(String.format("%s: %.2f € (%.1f%%)", nome, valor, percentagem)));
-                    }
-                }
+    /**
+     * Escolhe as fatias a mostrar (as {@link #MAX_FATIAS} - 1 maiores e "Outros" com o resto, se houver
+     * nomes a mais) e manda-as para o gráfico, que só mexe nas que mudaram. Se a thread do JavaFX ainda
+     * não aplicou o pedido anterior, este substitui-o.
+     */
+    private void publicarGrafico() {
+        Set<String> maiores = null;
+        if (somaPorNome.size() > MAX_FATIAS) {
+            List<Map.Entry<String, Long>> porValor = new ArrayList<>(somaPorNome.entrySet());
+            porValor.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            maiores = new HashSet<>();
+            for (int i = 0; i < MAX_FATIAS - 1; i++) maiores.add(porValor.get(i).getKey());
+        }
+
+        int n = maiores == null ? somaPorNome.size() : MAX_FATIAS - 1;
+        String[] nomes = new String[n];
+        double[] valores = new double[n];
+        long outros = 0;
+        int i = 0;
+        for (Map.Entry<String, Long> e : somaPorNome.entrySet()) { // Pela ordem em que os nomes apareceram
+            if (maiores == null || maiores.contains(e.getKey())) {
+                nomes[i] = e.getKey();
+                valores[i++] = Dinheiro.euros(e.getValue());
+            } else {
+                outros += e.getValue();
+            }
+        }
+        final double valorOutros = Dinheiro.euros(outros);
+        final int emOutros = somaPorNome.size() - n;
+
+        Runnable pedido = () -> aplicarFatias(nomes, valores, valorOutros, emOutros);
+        if (fatiasPendentes.getAndSet(pedido) == null) {
+            Platform.runLater(() -> fatiasPendentes.getAndSet(null).run());
+        }
+    }
+
+    /**
+     * Compara as fatias pedidas com as que estão no gráfico: muda os valores no lugar,
+     * tira as que deixaram de existir e acrescenta as novas (na thread do JavaFX).
+     */
+    private void aplicarFatias(String[] nomes, double[] valores, double valorOutros, int emOutros) {
+        Set<String> pedidas = new HashSet<>(Arrays.asList(nomes));
+        for (java.util.Iterator<Map.Entry<String, PieChart.Data>> it = fatias.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, PieChart.Data> e = it.next();
+            if (!pedidas.contains(e.getKey())) {
+                grafico.getData().remove(e.getValue());
+                it.remove();
+            }
+        }
+
+        for (int i = 0; i < nomes.length; i++) {
+            PieChart.Data data = fatias.get(nomes[i]);
+            if (data == null) adicionarFatia(nomes[i], valores[i]);
+            else if (data.getPieValue() != valores[i]) data.setPieValue(valores[i]);
+        }
+
+        nomesEmOutros = emOutros;
+        if (emOutros == 0) {
+            if (fatiaOutros != null) grafico.getData().remove(fatiaOutros);
+            fatiaOutros = null;
+        } else if (fatiaOutros == null) {
+            fatiaOutros = new PieChart.Data("Outros", valorOutros);
+            grafico.getData().add(fatiaOutros);
+            instalarDica(fatiaOutros, dicaOutros());
+        } else if (fatiaOutros.getPieValue() != valorOutros) {
+            fatiaOutros.setPieValue(valorOutros);
+        }
+    }
+
+    /**
+     * Acrescenta a fatia de um nome (antes de "Outros", que fica sempre no fim), com a cor e a dica
+     * guardadas para esse nome.
+     */
+    private void adicionarFatia(String nome, double valor) {
+        PieChart.Data data = new PieChart.Data(nome, valor);
+        String estilo = estilos.computeIfAbsent(nome, n -> {
+            Color cor = gerarCorParaNome(n);
+            return String.format("-fx-pie-color: rgb(%d, %d, %d);", cor.getRed(), cor.getGreen(), cor.getBlue());
+        });
+        Tooltip dica = dicas.computeIfAbsent(nome, n -> {
+            // A percentagem é calculada quando a dica aparece, por isso serve para qualquer mês
+            Tooltip t = new Tooltip(n);
+            t.setOnShowing(e -> {
+                PieChart.Data atual = fatias.get(n);
+                double v = atual != null ? atual.getPieValue() : 0;
+                t.setText(String.format("%s: %.2f € (%.1f%%)", n, v, percentagem(v)));
             });
+            return t;
         });
+
+        fatias.put(nome, data);
+        int pos = fatiaOutros != null ? grafico.getData().size() - 1 : grafico.getData().size();
+        grafico.getData().add(pos, data);
+        data.nodeProperty().addListener((obs, oldNode, newNode) -> {
+            if (newNode != null) newNode.setStyle(estilo);
+        });
+        if (data.getNode() != null) data.getNode().setStyle(estilo);
+        instalarDica(data, dica);
+    }
+
+    private Tooltip dicaOutros() {
+        Tooltip t = new Tooltip("Outros");
+        t.setOnShowing(e -> {
+            double v = fatiaOutros != null ? fatiaOutros.getPieValue() : 0;
+            t.setText(String.format("Outros (%d nomes): %.2f € (%.1f%%)", nomesEmOutros, v, percentagem(v)));
+        });
+        return t;
+    }
+
+    private void instalarDica(PieChart.Data data, Tooltip dica) {
+        data.nodeProperty().addListener((obs, oldNode, newNode) -> {
+            if (newNode != null) Tooltip.install(newNode, dica);
+        });
+        if (data.getNode() != null) Tooltip.install(data.getNode(), dica);
+    }
+
+    private double percentagem(double valor) {
+        double total = 0;
+        for (PieChart.Data d : grafico.getData()) total += d.getPieValue();
+        return total == 0 ? 0 : (valor / total) * 100.0;
     }
 
     public Color gerarCorParaNome(String nome) {
-        int hash = nome.hashCode();
-        return new Color(100 + Math.abs(hash) % 100, 100 + Math.abs(hash / 100) % 100, 100 + Math.abs(hash / 10000) % 100);
+        // Guardada por nome: é pedida em cada linha pintada e em cada fatia nova
+        return coresPorNome.computeIfAbsent(nome, n -> {
+            int hash = n.hashCode();
+            return new Color(100 + Math.abs(hash) % 100, 100 + Math.abs(hash / 100) % 100, 100 + Math.abs(hash / 10000) % 100);
+        });
     }
 
     private void configurarHotkeys() {
@@ -502,12 +846,22 @@ public class Janela extends JFrame {
 
         inputMap.put(KeyStroke.getKeyStroke("RIGHT"), "avancarMes");
         actionMap.put("avancarMes", new AbstractAction() {
-            public void actionPerformed(ActionEvent e) { controller.avancarMes(); atualizarVista(); }
+            public void actionPerformed(ActionEvent e) { modeloVista.executar(controller::avancarMes); }
         });
 
         inputMap.put(KeyStroke.getKeyStroke("LEFT"), "retrocederMes");
         actionMap.put("retrocederMes", new AbstractAction() {
-            public void actionPerformed(ActionEvent e) { controller.retrocederMes(); atualizarVista(); }
+            public void actionPerformed(ActionEvent e) { modeloVista.executar(controller::retrocederMes); }
+        });
+
+        inputMap.put(KeyStroke.getKeyStroke("control Z"), "desfazer");
+        actionMap.put("desfazer", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) { controller.desfazer(); }
+        });
+
+        inputMap.put(KeyStroke.getKeyStroke("control Y"), "refazer");
+        actionMap.put("refazer", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) { controller.refazer(); }
         });
     }
 
@@ -590,7 +944,6 @@ public class Janela extends JFrame {
                     if (novoStr == null || novoStr.trim().isEmpty()) return;
                     try {
                         j.controller.atualizarRendimento(Double.parseDouble(novoStr.replace(",", ".")));
-                        j.atualizarVista();
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(this, "Valor inválido!");
                     }
@@ -648,113 +1001,99 @@ public class Janela extends JFrame {
         }
     }
 
-    private static class ItemRegisto extends JPanel {
-        public ItemRegisto(int id, String nome, double montante, boolean fixa, boolean paga, boolean eEntrada) {
-            setLayout(new FlowLayout(FlowLayout.LEFT, 10, 10));
-            setOpaque(false);
+    private static final Color COR_ENTRADA = new Color(227, 196, 83); // Cor do botão "+ Entrada"
 
-            JCheckBox chkPaga = (fixa && !eEntrada) ? new JCheckBox() : null;
-            if (chkPaga != null) { chkPaga.setSelected(paga); chkPaga.setOpaque(false); }
+    /**
+     * Pinta as linhas da lista, com o aspeto das antigas linhas (caixa arredondada com a cor do nome,
+     * caixa "paga" nas fixas, botões de editar e remover). É um só componente, reutilizado para todas
+     * as linhas visíveis.
+     */
+    private class RenderizadorItem extends JPanel implements ListCellRenderer<ItemViewData> {
+        static final int LARGURA = 630, ALTURA = 70;
 
-            JLabel lblNome = new JLabel(nome);
-            lblNome.setFont(new Font("Arial", Font.BOLD, 20)); lblNome.setForeground(Color.WHITE);
+        final JCheckBox chkPaga = new JCheckBox();
+        final JButton btnEditar = new BotaoRedondoColorido("✏️", new Color(82, 113, 255));
+        final JButton btnRemover = new BotaoRedondoColorido("🗑️", new Color(255, 82, 82));
+        private final JLabel lblNome = new JLabel();
+        private final JLabel lblValor = new JLabel();
+        private Color corFundo = Color.GRAY;
 
-            String prefixo = eEntrada ? "+ " : "";
-            JLabel lblValor = new JLabel(String.format("%s%.2f €", prefixo, montante));
-            lblValor.setFont(new Font("Arial", Font.PLAIN, 20)); lblValor.setForeground(Color.WHITE);
+        RenderizadorItem() {
+            setLayout(new FlowLayout(FlowLayout.LEFT, 10, 10));
+            setOpaque(false);
+
+            chkPaga.setOpaque(false);
+            lblNome.setFont(new Font("Arial", Font.BOLD, 20));
+            lblValor.setFont(new Font("Arial", Font.PLAIN, 20));
 
             JPanel painelConteudo = new JPanel() {
                 @Override protected void paintComponent(Graphics g) {
                     super.paintComponent(g);
                     Graphics2D g2 = (Graphics2D) g.create();
                     g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                    
-                    Janela j = (Janela) SwingUtilities.getWindowAncestor(this);
-                    
-                    // COR FIXA PARA ENTRADAS AQUI!
-                    Color base;
-                    if (eEntrada) {
-                        base = new Color(227, 196, 83); // Cor do botão "+ Entrada"
-                    } else {
-                        base = j != null ? j.gerarCorParaNome(nome) : Color.GRAY;
-                    }
-                    
-                    if (fixa && chkPaga != null && !chkPaga.isSelected()) {
-                        base = new Color(base.getRed(), base.getGreen(), base.getBlue(), 100);
-                        lblNome.setForeground(new Color(90, 90, 90)); lblValor.setForeground(new Color(90, 90, 90));
-                    } else {
-                        lblNome.setForeground(Color.WHITE); lblValor.setForeground(Color.WHITE);
-                    }
-                    g2.setColor(base); g2.fillRoundRect(0, 0, getWidth(), getHeight(), 50, 50); g2.dispose();
+                    g2.setColor(corFundo); g2.fillRoundRect(0, 0, getWidth(), getHeight(), 50, 50); g2.dispose();
                 }
             };
             painelConteudo.setOpaque(false); painelConteudo.setLayout(new FlowLayout(FlowLayout.LEFT, 10, 10));
             painelConteudo.setPreferredSize(new Dimension(500, 50));
-
-            if (chkPaga != null) {
-                painelConteudo.add(chkPaga);
-                chkPaga.addActionListener(e -> {
-                    Janela j = (Janela) SwingUtilities.getWindowAncestor(this);
-                    j.controller.marcarDespesaComoPaga(id, chkPaga.isSelected());
-                    SwingUtilities.invokeLater(() -> j.atualizarVista());
-                });
-            }
-            painelConteudo.add(lblNome); painelConteudo.add(lblValor);
-
-            JButton btnEditar = new BotaoRedondoColorido("✏️", new Color(82, 113, 255));
-            JButton btnRemover = new BotaoRedondoColorido("🗑️", new Color(255, 82, 82));
-
-            btnEditar.addActionListener(e -> {
-                Janela j = (Janela) SwingUtilities.getWindowAncestor(this);
-                // Usamos também a cor azul claro para combinar no diálogo de edição!
-                Color corElemento = eEntrada ? new Color(227, 196, 83) : j.gerarCorParaNome(nome);
-                String hexCor = String.format("#%02x%02x%02x", corElemento.getRed(), corElemento.getGreen(), corElemento.getBlue());
-                String msg = "<html>Novo valor para <b><font color='" + hexCor + "'>" + nome + "</font></b>:</html>";
-                String novoVal = j.mostrarDialogoInputSemBorda(msg);
-                if (novoVal == null || novoVal.trim().isEmpty()) return;
-                try {
-                    double nValor = Double.parseDouble(novoVal.replace(",", "."));
-                    if (eEntrada) j.controller.editarEntrada(id, nValor);
-                    else if (fixa) j.controller.editarDespesaFixaFuturas(id, nValor);
-                    else j.controller.editarDespesa(id, nValor);
-                    j.atualizarVista();
-                } catch (Exception ex) { JOptionPane.showMessageDialog(this, "Erro ao editar!"); }
-            });
-
-            btnRemover.addActionListener(e -> {
-                Janela j = (Janela) SwingUtilities.getWindowAncestor(this);
-                Color corElemento = eEntrada ? new Color(227, 196, 83) : j.gerarCorParaNome(nome);
-                String hexCor = String.format("#%02x%02x%02x", corElemento.getRed(), corElemento.getGreen(), corElemento.getBlue());
-                String tipo = eEntrada ? "entrada" : "despesa";
-                String msg = "<html>Remover a " + tipo + " <b><font color='" + hexCor + "'>" + nome + "</font></b>?</html>";
-                boolean confirmar = j.mostrarDialogoConfirmacaoSemBorda(msg);
-                if (confirmar) {
-                    if (eEntrada) j.controller.removerEntrada(id);
-                    else if (fixa) j.controller.removerDespesaFixaFuturas(id);
-                    else j.controller.removerDespesa(id);
-                    j.atualizarVista();
-                }
-            });
+            painelConteudo.add(chkPaga); painelConteudo.add(lblNome); painelConteudo.add(lblValor);
 
             add(painelConteudo); add(btnEditar); add(btnRemover);
         }
 
-        private static class BotaoRedondoColorido extends JButton {
-            private final Color corFundo;
-            public BotaoRedondoColorido(String emoji, Color corFundo) {
-                super(emoji); this.corFundo = corFundo;
-                setPreferredSize(new Dimension(45, 45)); setFocusPainted(false); setContentAreaFilled(false);
-                setBorderPainted(false); setForeground(Color.WHITE); setFont(new Font("SansSerif", Font.PLAIN, 12));
+        @Override
+        public Component getListCellRendererComponent(JList<? extends ItemViewData> lista, ItemViewData item, int indice, boolean selecionado, boolean focado) {
+            boolean temPaga = item.fixa && !item.eEntrada;
+            chkPaga.setVisible(temPaga);
+            chkPaga.setSelected(item.paga);
+            lblNome.setText(item.nome);
+            lblValor.setText(String.format("%s%.2f €", item.eEntrada ? "+ " : "", Dinheiro.euros(item.montante)));
+
+            // COR FIXA PARA ENTRADAS AQUI!
+            Color base = item.eEntrada ? COR_ENTRADA : gerarCorParaNome(item.nome);
+            if (temPaga && !item.paga) {
+                corFundo = new Color(base.getRed(), base.getGreen(), base.getBlue(), 100);
+                lblNome.setForeground(new Color(90, 90, 90)); lblValor.setForeground(new Color(90, 90, 90));
+            } else {
+                corFundo = base;
+                lblNome.setForeground(Color.WHITE); lblValor.setForeground(Color.WHITE);
             }
-            @Override protected void paintComponent(Graphics g) {
-                Graphics2D g2 = (Graphics2D) g.create();
-                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                g2.setColor(corFundo); g2.fillOval(0, 0, getWidth(), getHeight());
-                super.paintComponent(g); g2.dispose();
+            return this;
+        }
+
+        /**
+         * Prepara o componente para a linha e devolve o que está no ponto (x, y) dessa linha.
+         */
+        Component componenteEm(JList<ItemViewData> lista, ItemViewData item, int indice, Dimension tamanho, int x, int y) {
+            getListCellRendererComponent(lista, item, indice, false, false);
+            setBounds(0, 0, tamanho.width, tamanho.height);
+            dispor(this);
+            return SwingUtilities.getDeepestComponentAt(this, x, y);
+        }
+
+        private void dispor(Container c) {
+            c.doLayout();
+            for (Component filho : c.getComponents()) {
+                if (filho instanceof Container sub) dispor(sub);
             }
         }
     }
 
+    private static class BotaoRedondoColorido extends JButton {
+        private final Color corFundo;
+        public BotaoRedondoColorido(String emoji, Color corFundo) {
+            super(emoji); this.corFundo = corFundo;
+            setPreferredSize(new Dimension(45, 45)); setFocusPainted(false); setContentAreaFilled(false);
+            setBorderPainted(false); setForeground(Color.WHITE); setFont(new Font("SansSerif", Font.PLAIN, 12));
+        }
+        @Override protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(corFundo); g2.fillOval(0, 0, getWidth(), getHeight());
+            super.paintComponent(g); g2.dispose();
+        }
+    }
+
     private static class ScrollBarCinzaArredondada extends BasicScrollBarUI {
         @Override protected void configureScrollBarColors() {
             thumbColor = new Color(180, 180, 180); trackColor = new Color(230, 230, 230);
@@ -0,0 +1,230 @@
+package view;
+
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+import controller.Evento;
+import controller.MoneyCountController;
+import model.Despesa;
+import model.DespesaFixa;
+import model.DicionarioNomes;
+import model.Entrada;
+
+/**
+ * Prepara os dados de cada mês ({@link VistaMes}) numa thread de fundo, para o EDT só ter de os mostrar.
+ *
+ * Os meses ao lado do que está a ser visto são preparados antes de serem pedidos e ficam numa cache
+ * pequena (LRU), por isso andar de mês em mês é imediato. Cada alteração do controlador tira da cache
+ * os meses que afeta; um cálculo apanhado a meio por uma alteração a esse mês é repetido, e quem recebe
+ * os dados pode confirmar com {@link #atual} que não mudaram desde então.
+ */
+final class ModeloVista {
+
+    private static final int CAPACIDADE = 5; // O mês visto, os vizinhos e os dois de onde se veio
+    private static final int MAX_INVALIDACOES = 64;
+
+    private final MoneyCountController controller;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "moneycount-vista");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Tudo o que está abaixo é protegido pelo monitor deste objeto
+    private final Map<YearMonth, VistaMes> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<YearMonth, VistaMes> mais) {
+            return size() > CAPACIDADE;
+        }
+    };
+    private final Map<YearMonth, CompletableFuture<VistaMes>> emCurso = new HashMap<>();
+    private final ArrayDeque<Invalidacao> invalidacoes = new ArrayDeque<>(); // As mais recentes
+    private long versao;
+
+    /**
+     * Meses alterados numa dada versão (null = sem limite desse lado).
+     */
+    private record Invalidacao(long versao, YearMonth de, YearMonth ate) {
+        boolean inclui(YearMonth mes) {
+            return (de == null || !mes.isBefore(de)) && (ate == null || !mes.isAfter(ate));
+        }
+    }
+
+    ModeloVista(MoneyCountController controller) {
+        this.controller = controller;
+        controller.subscrever(this::invalidar);
+    }
+
+    /**
+     * Corre uma operação na thread da vista (ex: mudar de mês, que pode ter de ler o mês do disco),
+     * antes dos cálculos pedidos depois dela.
+     */
+    void executar(Runnable operacao) {
+        executor.execute(operacao);
+    }
+
+    /**
+     * Entrega os dados do mês no EDT: logo, se estiverem na cache, ou quando estiverem calculados.
+     * Deve ser chamado no EDT.
+     */
+    void pedir(YearMonth mes, Consumer<VistaMes> aplicar) {
+        VistaMes pronta;
+        synchronized (this) {
+            pronta = cache.get(mes);
+        }
+        if (pronta != null) {
+            aplicar.accept(pronta);
+            return;
+        }
+        calcular(mes).thenAccept(v -> SwingUtilities.invokeLater(() -> aplicar.accept(v)));
+    }
+
+    /**
+     * @return false se o mês mudou depois de os dados terem sido calculados (é preciso pedi-los outra vez)
+     */
+    synchronized boolean atual(VistaMes v) {
+        return !alteradoDesde(v.versao(), v.mes());
+    }
+
+    /**
+     * Prepara um mês em fundo, se ainda não estiver na cache (os meses que não existem são ignorados).
+     */
+    void preparar(YearMonth mes) {
+        synchronized (this) {
+            if (cache.containsKey(mes)) return;
+        }
+        calcular(mes);
+    }
+
+    private synchronized CompletableFuture<VistaMes> calcular(YearMonth mes) {
+        CompletableFuture<VistaMes> f = emCurso.get(mes);
+        if (f != null) return f;
+
+        CompletableFuture<VistaMes> novo = CompletableFuture.supplyAsync(() -> calcularEstavel(mes), executor);
+        emCurso.put(mes, novo);
+        novo.whenComplete((v, ex) -> {
+            synchronized (this) {
+                emCurso.remove(mes, novo);
+            }
+            if (ex != null) System.err.println("⚠️ Erro ao preparar " + mes + ": " + ex.getMessage());
+        });
+        return novo;
+    }
+
+    /**
+     * Calcula o mês e guarda-o na cache, repetindo se entretanto houve uma alteração a esse mês.
+     * Um mês que não existe dá uma vista vazia, que não fica na cache.
+     */
+    private VistaMes calcularEstavel(YearMonth mes) {
+        while (true) {
+            long inicio;
+            synchronized (this) {
+                inicio = versao;
+            }
+            VistaMes v = ler(mes, inicio);
+            synchronized (this) {
+                if (!alteradoDesde(inicio, mes)) {
+                    if (v == null) return VistaMes.vazia(mes, inicio);
+                    cache.put(mes, v);
+                    return v;
+                }
+            }
+        }
+    }
+
+    private boolean alteradoDesde(long inicio, YearMonth mes) {
+        if (versao == inicio) return false;
+        if (invalidacoes.isEmpty() || invalidacoes.peekFirst().versao() > inicio + 1) return true; // Já não há registo
+        for (Invalidacao i : invalidacoes) {
+            if (i.versao() > inicio && i.inclui(mes)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tira da cache os meses afetados por uma alteração. As despesas fixas também aparecem nos meses seguintes.
+     */
+    private void invalidar(Evento evento) {
+        switch (evento) {
+            case Evento.MesMudado e -> { } // Não muda nenhum mês
+            case Evento.MesesAlterados e -> invalidar(e.de(), e.ate());
+            case Evento.ItemAdicionado e -> invalidar(e.mes(), e.item().fixa() ? null : e.mes());
+            case Evento.ItemRemovido e -> invalidar(e.mes(), e.item().fixa() ? null : e.mes());
+            case Evento.ItemEditado e -> invalidar(e.mes(), e.depois().fixa() ? null : e.mes());
+            case Evento.PagaAlterada e -> invalidar(e.mes(), e.mes());
+            case Evento.RendimentoAlterado e -> invalidar(e.mes(), e.mes());
+        }
+    }
+
+    private synchronized void invalidar(YearMonth de, YearMonth ate) {
+        Invalidacao i = new Invalidacao(++versao, de, ate);
+        invalidacoes.addLast(i);
+        if (invalidacoes.size() > MAX_INVALIDACOES) invalidacoes.removeFirst();
+        cache.keySet().removeIf(i::inclui);
+    }
+
+    /**
+     * Copia o mês com o lock do controlador e só depois ordena e soma, sem bloquear ninguém.
+     */
+    private VistaMes ler(YearMonth mes, long versao) {
+        record Copia(long rendimento, long saldo, long totalDespesas, List<Despesa> despesas, List<Entrada> entradas) { }
+        Copia c = controller.lerMes(mes, r -> new Copia(r.getRendimento(), r.getSaldo(), r.getTotalDespesas(),
+                r.listarDespesas(), new ArrayList<>(r.getEntradas().values())));
+        if (c == null) return null;
+
+        List<ItemViewData> itens = new ArrayList<>(c.despesas().size() + c.entradas().size());
+        for (Despesa d : c.despesas()) {
+            boolean fixa = d instanceof DespesaFixa;
+            boolean paga = fixa && ((DespesaFixa) d).isPago();
+            itens.add(new ItemViewData(d.getIdDespesa(), d.getNome(), d.getMontante(), fixa, paga, false));
+        }
+        for (Entrada e : c.entradas()) {
+            itens.add(new ItemViewData(e.getIdEntrada(), e.getNome(), e.getMontante(), false, false, true));
+        }
+        itens.sort(ItemViewData.ORDEM);
+
+        return new VistaMes(mes, c.rendimento(), c.saldo(), c.totalDespesas(),
+                Collections.unmodifiableList(itens), Collections.unmodifiableMap(somarPorNome(c.despesas())), versao);
+    }
+
+    /**
+     * Soma as despesas de cada nome, pela ordem em que os nomes aparecem.
+     */
+    private static Map<String, Long> somarPorNome(List<Despesa> despesas) {
+        // Soma em cêntimos num array indexado pelo código do nome (sem hashes de strings)
+        long[] somaPorCodigo = new long[DicionarioNomes.tamanho()];
+        boolean[] visto = new boolean[somaPorCodigo.length];
+        int[] ordem = new int[despesas.size()]; // Códigos pela ordem em que aparecem
+        int numNomes = 0;
+        for (Despesa d : despesas) {
+            int codigo = d.getCodigoNome();
+            if (codigo >= somaPorCodigo.length) { // Nome criado entretanto
+                somaPorCodigo = Arrays.copyOf(somaPorCodigo, DicionarioNomes.tamanho());
+                visto = Arrays.copyOf(visto, somaPorCodigo.length);
+            }
+            if (!visto[codigo]) {
+                visto[codigo] = true;
+                ordem[numNomes++] = codigo;
+            }
+            somaPorCodigo[codigo] += d.getMontante();
+        }
+
+        Map<String, Long> somaPorNome = new LinkedHashMap<>();
+        for (int i = 0; i < numNomes; i++) {
+            if (somaPorCodigo[ordem[i]] > 0) somaPorNome.put(DicionarioNomes.nome(ordem[i]), somaPorCodigo[ordem[i]]);
+        }
+        return somaPorNome;
+    }
+}
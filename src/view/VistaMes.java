@@ -0,0 +1,23 @@
+package view;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tudo o que a janela mostra de um mês, já calculado: os itens pela ordem da lista, os totais
+ * (em cêntimos) e a soma de cada nome para o gráfico, pela ordem em que os nomes aparecem.
+ * Feito fora do EDT por {@link ModeloVista}; não muda depois de criado.
+ *
+ * @param versao Versão de {@link ModeloVista} em que os dados estavam certos (ver {@link ModeloVista#atual})
+ */
+record VistaMes(YearMonth mes, long rendimento, long saldo, long totalDespesas,
+                List<ItemViewData> itens, Map<String, Long> somaPorNome, long versao) {
+
+    /**
+     * Um mês que ainda não existe no modelo.
+     */
+    static VistaMes vazia(YearMonth mes, long versao) {
+        return new VistaMes(mes, 0, 0, 0, List.of(), Map.of(), versao);
+    }
+}